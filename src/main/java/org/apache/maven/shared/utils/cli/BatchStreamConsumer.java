@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link StreamConsumer} that accepts several lines at once. A {@link StreamPumper} passes the lines it has read
+ * so far in one call, which saves the per line synchronization and flushing of consumers writing somewhere, while
+ * lines are still passed on without noticeable delay.
+ *
+ * @since 3.5.0
+ */
+public interface BatchStreamConsumer extends StreamConsumer {
+    /**
+     * Called when the StreamPumper pumps some lines from the Stream.
+     * @param lines The lines to be consumed, in order, never empty. The list must not be kept after returning.
+     * @throws IOException if consuming {@code lines} fails.
+     */
+    void consumeLines(List<String> lines) throws IOException;
+}
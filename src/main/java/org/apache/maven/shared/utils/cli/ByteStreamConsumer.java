@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link StreamConsumer} that accepts the raw bytes of a stream. A {@link StreamPumper} passes the bytes as they are
+ * read, without decoding them with a charset or splitting them into lines, which suits binary output and output that
+ * is only written elsewhere.
+ * <p>
+ * Implementing this interface is what selects the raw mode: {@link StreamPumper} and thus the
+ * {@link CommandLineUtils} methods check the type of each consumer, and any stream charset is ignored for it.
+ * </p>
+ *
+ * @since 3.5.0
+ */
+public interface ByteStreamConsumer extends StreamConsumer {
+    /**
+     * Called when the StreamPumper pumps some bytes from the Stream.
+     * @param bytes The bytes to be consumed, between the position and the limit of the buffer, never empty. The buffer
+     *     is reused once this method returns, so its content must be copied to be kept.
+     * @throws IOException if consuming {@code bytes} fails.
+     */
+    void consume(ByteBuffer bytes) throws IOException;
+
+    /**
+     * Passes a line encoded with the default charset and followed by the line separator to
+     * {@link #consume(ByteBuffer)}, for callers feeding lines. A {@link StreamPumper} never calls it; implementations
+     * receiving lines in another charset should override it.
+     *
+     * @param line The line to be consumed.
+     * @throws IOException if consuming {@code line} fails.
+     */
+    @Override
+    default void consumeLine(String line) throws IOException {
+        consume(ByteBuffer.wrap((line + System.lineSeparator()).getBytes(Charset.defaultCharset())));
+    }
+}
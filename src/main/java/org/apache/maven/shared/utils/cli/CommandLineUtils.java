@@ -21,15 +21,31 @@ package org.apache.maven.shared.utils.cli;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.shared.utils.Os;
 import org.apache.maven.shared.utils.StringUtils;
@@ -39,6 +55,10 @@ import org.apache.maven.shared.utils.StringUtils;
  */
 public abstract class CommandLineUtils {
 
+    private static volatile Executor streamExecutor;
+
+    private static volatile long terminationGracePeriodMillis = 1000;
+
     /**
      * A {@code StreamConsumer} providing consumed lines as a {@code String}.
      *
@@ -66,6 +86,134 @@ public abstract class CommandLineUtils {
         }
     }
 
+    /**
+     * A {@code StreamConsumer} keeping only the last lines consumed, to report the end of a possibly huge output
+     * without risking to run out of memory.
+     * <p>
+     * The lines are kept in a ring buffer allocated up front, limited by a number of lines and a number of characters;
+     * a single line longer than the latter is kept truncated to its end. Lines must be passed by one thread at a time,
+     * as a {@link StreamPumper} does, so use one instance per stream. The tail may be read by any thread at any time,
+     * neither side ever blocks.
+     * </p>
+     *
+     * @see #getOutput()
+     * @since 3.5.0
+     */
+    public static class TailStreamConsumer implements StreamConsumer {
+
+        private static final String LS = System.getProperty("line.separator", "\n");
+
+        private final int maxChars;
+
+        /**
+         * One slot more than the number of lines kept, so the line being added never overwrites a kept line.
+         */
+        private final String[] ring;
+
+        private final int[] lengths;
+
+        /**
+         * The number of lines consumed so far; the lines from {@code head} up to here are kept.
+         */
+        private volatile long written;
+
+        /**
+         * The number of lines dropped so far.
+         */
+        private volatile long head;
+
+        private int keptChars;
+
+        /**
+         * @param maxLines the maximum number of lines to keep
+         * @param maxChars the maximum number of characters to keep, not counting line separators
+         */
+        public TailStreamConsumer(int maxLines, int maxChars) {
+            if (maxLines <= 0 || maxChars <= 0) {
+                throw new IllegalArgumentException("maxLines and maxChars must be positive");
+            }
+            this.maxChars = maxChars;
+            this.ring = new String[maxLines + 1];
+            this.lengths = new int[maxLines + 1];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void consumeLine(String line) {
+            if (line.length() > maxChars) {
+                line = line.substring(line.length() - maxChars);
+            }
+            long index = written;
+            int slot = (int) (index % ring.length);
+            ring[slot] = line;
+            lengths[slot] = line.length();
+            keptChars += line.length();
+
+            long first = head;
+            while (index + 1 - first > ring.length - 1 || keptChars > maxChars) {
+                keptChars -= lengths[(int) (first % ring.length)];
+                first++;
+            }
+            head = first;
+            written = index + 1;
+        }
+
+        /**
+         * @return the lines kept, oldest first
+         */
+        public List<String> getLines() {
+            while (true) {
+                long end = written;
+                long start = head;
+                List<String> lines = new ArrayList<>((int) (end - start));
+                for (long index = start; index < end; index++) {
+                    lines.add(ring[(int) (index % ring.length)]);
+                }
+                // a line added meanwhile may have overwritten the oldest ones read
+                if (written - start < ring.length) {
+                    return lines;
+                }
+            }
+        }
+
+        /**
+         * @return the number of lines consumed but not kept
+         */
+        public long getDroppedLines() {
+            return head;
+        }
+
+        /**
+         * @return The lines kept, each followed by a line separator.
+         */
+        public String getOutput() {
+            StringBuilder output = new StringBuilder();
+            for (String line : getLines()) {
+                output.append(line).append(LS);
+            }
+            return output.toString();
+        }
+    }
+
+    /**
+     * Sets the executor that feeds the input and pumps the output of the processes started by this class, instead of
+     * starting dedicated threads for every process.
+     * <p>
+     * Each running process occupies up to three tasks of the executor until its streams are closed, and a process
+     * whose output isn't pumped may block forever. The executor must therefore never queue tasks behind running ones;
+     * when it rejects a task, a dedicated thread is started instead. By default virtual threads are used on Java 21
+     * and later, and before a shared pool of at most 64 daemon threads, beyond which dedicated threads are started.
+     * </p>
+     *
+     * @param executor the executor to use, or {@code null} to restore the default
+     * @since 3.5.0
+     */
+    public static void setStreamExecutor(@Nullable Executor executor) {
+        streamExecutor = executor;
+    }
+
     /**
      * @param cl The command line {@link Commandline}
      * @param systemOut {@link StreamConsumer}
@@ -156,7 +304,7 @@ public abstract class CommandLineUtils {
      * @param timeoutInSeconds Positive integer to specify timeout, zero and negative integers for no timeout.
      * @param runAfterProcessTermination Optional callback to run after the process terminated or the the timeout was
      *  exceeded, but before waiting on the stream feeder and pumpers to finish.
-     * @param streamCharset    Charset to use for reading streams
+     * @param streamCharset    Charset to use for reading streams, unused for a {@link ByteStreamConsumer}
      * @return A return value, see {@link Process#exitValue()}
      * @throws CommandLineException or CommandLineTimeOutException if time out occurs
      */
@@ -209,7 +357,7 @@ public abstract class CommandLineUtils {
      * @param systemErr        A consumer that receives system error stream output, must be thread safe
      * @param timeoutInSeconds Positive integer to specify timeout, zero and negative integers for no timeout.
      * @param runAfterProcessTermination Optional callback to run after the process terminated or the the timeout was
-     * @param streamCharset    Charset to use for reading streams
+     * @param streamCharset    Charset to use for reading streams, unused for a {@link ByteStreamConsumer}
      * @return A CommandLineCallable that provides the process return value, see {@link Process#exitValue()}. "call"
      *         must be called on this to be sure the forked process has terminated, no guarantees is made about
      *         any internal state before after the completion of the call statements
@@ -229,22 +377,256 @@ public abstract class CommandLineUtils {
             throw new IllegalArgumentException("cl cannot be null.");
         }
 
-        final Process p = cl.execute();
+        return callable(
+                cl.execute(),
+                systemIn,
+                systemOut,
+                systemErr,
+                true,
+                streamCharset,
+                Math.max(0, timeoutInSeconds),
+                TimeUnit.SECONDS,
+                runAfterProcessTermination);
+    }
 
-        final Thread processHook = new Thread() {
+    /**
+     * Immediately forks a process, returns a callable that will block until process is complete. When the timeout is
+     * exceeded or the calling thread is interrupted, the process and the processes it started are terminated according
+     * to the {@link #setTerminationGracePeriod(long, TimeUnit) termination grace period}, so the callable may block
+     * for up to that period (1 s by default) past the timeout before it throws.
+     * <p>
+     * The type of each consumer selects how its stream is pumped: a {@link ByteStreamConsumer} receives the raw bytes
+     * as they are read, without decoding them, and any other consumer receives the lines decoded with
+     * {@code streamCharset}.
+     * </p>
+     *
+     * @param cl               The command line to execute
+     * @param systemIn         The input to read from, must be thread safe
+     * @param systemOut        A consumer that receives output, must be thread safe
+     * @param systemErr        A consumer that receives system error stream output, must be thread safe
+     * @param timeout          Positive duration to specify timeout, {@code null}, zero and negative durations for no
+     *                         timeout.
+     * @param runAfterProcessTermination Optional callback to run after the process terminated or the the timeout was
+     * @param streamCharset    Charset to use for reading streams, unused for a {@link ByteStreamConsumer}
+     * @return A CommandLineCallable that provides the process return value, see {@link Process#exitValue()}. "call"
+     *         must be called on this to be sure the forked process has terminated, no guarantees is made about
+     *         any internal state before after the completion of the call statements
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static CommandLineCallable executeCommandLineAsCallable(
+            @Nonnull final Commandline cl,
+            @Nullable final InputStream systemIn,
+            final StreamConsumer systemOut,
+            final StreamConsumer systemErr,
+            @Nullable final Duration timeout,
+            @Nullable final Runnable runAfterProcessTermination,
+            @Nullable final Charset streamCharset)
+            throws CommandLineException {
+        //noinspection ConstantConditions
+        if (cl == null) {
+            throw new IllegalArgumentException("cl cannot be null.");
+        }
 
-            {
-                this.setName("CommandLineUtils process shutdown hook");
-                this.setContextClassLoader(null);
-            }
+        long timeoutMillis = timeout == null || timeout.isNegative() ? 0 : timeout.toMillis();
+        return callable(
+                cl.execute(),
+                systemIn,
+                systemOut,
+                systemErr,
+                true,
+                streamCharset,
+                timeoutMillis,
+                TimeUnit.MILLISECONDS,
+                runAfterProcessTermination);
+    }
 
-            @Override
-            public void run() {
-                p.destroy();
+    /**
+     * @param cl               The command line to execute
+     * @param systemIn         The input to read from, must be thread safe
+     * @param systemOut        A consumer that receives output, must be thread safe
+     * @param systemErr        A consumer that receives system error stream output, must be thread safe
+     * @param timeout          Positive duration to specify timeout, {@code null}, zero and negative durations for no
+     *                         timeout.
+     * @return A return value, see {@link Process#exitValue()}
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static int executeCommandLine(
+            @Nonnull Commandline cl,
+            InputStream systemIn,
+            StreamConsumer systemOut,
+            StreamConsumer systemErr,
+            @Nullable Duration timeout)
+            throws CommandLineException {
+        return executeCommandLineAsCallable(cl, systemIn, systemOut, systemErr, timeout, null, null).call();
+    }
+
+    /**
+     * Sets how long processes that exceeded their timeout, or whose caller was interrupted, get to terminate before
+     * they are killed. The processes they started are terminated as well on Java 9 and later.
+     *
+     * @param gracePeriod the time to wait after asking the processes to terminate, zero to kill them right away
+     * @param unit the unit of {@code gracePeriod}
+     * @since 3.5.0
+     */
+    public static void setTerminationGracePeriod(long gracePeriod, @Nonnull TimeUnit unit) {
+        terminationGracePeriodMillis = Math.max(0, unit.toMillis(gracePeriod));
+    }
+
+    /**
+     * Executes a command line, letting the operating system write its output straight to files instead of pumping
+     * it through this JVM.
+     *
+     * @param cl               The command line to execute
+     * @param systemIn         The input to read from, must be thread safe
+     * @param systemOut        The file receiving the output, replaced if it exists
+     * @param systemErr        The file receiving the system error stream output, or {@code null} to write it to
+     *                         {@code systemOut} as well
+     * @param timeoutInSeconds Positive integer to specify timeout, zero and negative integers for no timeout.
+     * @return A return value, see {@link Process#exitValue()}
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static int executeCommandLineRedirected(
+            @Nonnull Commandline cl,
+            @Nullable InputStream systemIn,
+            @Nonnull File systemOut,
+            @Nullable File systemErr,
+            int timeoutInSeconds)
+            throws CommandLineException {
+        return executeCommandLineRedirected(cl, systemIn, systemOut, systemErr, timeoutInSeconds, 0, null);
+    }
+
+    /**
+     * Executes a command line, letting the operating system write its output straight to files instead of pumping
+     * it through this JVM. Once the process terminated or the timeout was exceeded, the last lines of the error
+     * output are passed to {@code tail}, for example to report why the command failed.
+     *
+     * @param cl               The command line to execute
+     * @param systemIn         The input to read from, must be thread safe
+     * @param systemOut        The file receiving the output, replaced if it exists
+     * @param systemErr        The file receiving the system error stream output, or {@code null} to write it to
+     *                         {@code systemOut} as well
+     * @param timeoutInSeconds Positive integer to specify timeout, zero and negative integers for no timeout.
+     * @param tailSize         The maximum number of bytes read from the end of {@code systemErr}, or of
+     *                         {@code systemOut} if the error output is merged into it
+     * @param tail             A consumer that receives the complete lines within the last {@code tailSize} bytes
+     * @return A return value, see {@link Process#exitValue()}
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static int executeCommandLineRedirected(
+            @Nonnull Commandline cl,
+            @Nullable InputStream systemIn,
+            @Nonnull File systemOut,
+            @Nullable File systemErr,
+            int timeoutInSeconds,
+            int tailSize,
+            @Nullable StreamConsumer tail)
+            throws CommandLineException {
+        return executeCommandLineRedirected(
+                cl,
+                systemIn,
+                systemOut.toPath(),
+                systemErr != null ? systemErr.toPath() : null,
+                timeoutInSeconds,
+                tailSize,
+                tail,
+                null);
+    }
+
+    /**
+     * Executes a command line, letting the operating system write its output straight to files instead of pumping
+     * it through this JVM. Once the process terminated or the timeout was exceeded, the last lines of the error
+     * output are passed to {@code tail}, for example to report why the command failed.
+     *
+     * @param cl               The command line to execute
+     * @param systemIn         The input to read from, must be thread safe
+     * @param systemOut        The file receiving the output, replaced if it exists
+     * @param systemErr        The file receiving the system error stream output, or {@code null} to write it to
+     *                         {@code systemOut} as well
+     * @param timeoutInSeconds Positive integer to specify timeout, zero and negative integers for no timeout.
+     * @param tailSize         The maximum number of bytes read from the end of {@code systemErr}, or of
+     *                         {@code systemOut} if the error output is merged into it
+     * @param tail             A consumer that receives the complete lines within the last {@code tailSize} bytes, or
+     *                         {@code null}
+     * @param streamCharset    Charset to decode the tail with, the platform charset if {@code null}
+     * @return A return value, see {@link Process#exitValue()}
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static int executeCommandLineRedirected(
+            @Nonnull Commandline cl,
+            @Nullable InputStream systemIn,
+            @Nonnull Path systemOut,
+            @Nullable Path systemErr,
+            int timeoutInSeconds,
+            int tailSize,
+            @Nullable StreamConsumer tail,
+            @Nullable Charset streamCharset)
+            throws CommandLineException {
+        //noinspection ConstantConditions
+        if (cl == null) {
+            throw new IllegalArgumentException("cl cannot be null.");
+        }
+
+        ProcessBuilder builder = cl.createProcessBuilder().redirectOutput(systemOut.toFile());
+        if (systemErr == null) {
+            builder.redirectErrorStream(true);
+        } else {
+            builder.redirectError(systemErr.toFile());
+        }
+
+        Runnable readTail = null;
+        if (tail != null && tailSize > 0) {
+            Path tailed = systemErr != null ? systemErr : systemOut;
+            Charset charset = streamCharset != null ? streamCharset : Charset.defaultCharset();
+            readTail = () -> readTail(tailed, tailSize, charset, tail);
+        }
+
+        Process p = Commandline.start(builder);
+        return callable(
+                        p, systemIn, null, null, false, null, Math.max(0, timeoutInSeconds), TimeUnit.SECONDS, readTail)
+                .call();
+    }
+
+    /**
+     * Passes the complete lines within the last bytes of a file to a consumer, ignoring any failure.
+     */
+    private static void readTail(
+            @Nonnull Path file, int tailSize, @Nonnull Charset charset, @Nonnull StreamConsumer tail) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long start = Math.max(0, channel.size() - tailSize);
+            ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // read the tail completely
             }
-        };
+            String text = new String(buffer.array(), 0, buffer.position(), charset);
+            if (start > 0) {
+                // drop the incomplete first line
+                text = text.substring(text.indexOf('\n') + 1);
+            }
+            BufferedReader lines = new BufferedReader(new StringReader(text));
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                tail.consumeLine(line);
+            }
+        } catch (IOException e) {
+            // the tail is only a hint, the exit code and the file matter
+        }
+    }
 
-        ShutdownHookUtils.addShutDownHook(processHook);
+    private static CommandLineCallable callable(
+            @Nonnull final Process p,
+            @Nullable final InputStream systemIn,
+            final StreamConsumer systemOut,
+            final StreamConsumer systemErr,
+            final boolean pumpOutput,
+            @Nullable final Charset streamCharset,
+            final long timeout,
+            @Nonnull final TimeUnit unit,
+            @Nullable final Runnable runAfterProcessTermination) {
+        ProcessRegistry.register(p);
 
         return new CommandLineCallable() {
 
@@ -256,21 +638,20 @@ public abstract class CommandLineUtils {
                 try {
                     if (systemIn != null) {
                         inputFeeder = new StreamPollFeeder(systemIn, p.getOutputStream());
-                        inputFeeder.setName("StreamPollFeeder-systemIn");
-                        inputFeeder.start();
+                        startStreamHandler(inputFeeder, "StreamPollFeeder-systemIn");
                     }
 
-                    outputPumper = new StreamPumper(p.getInputStream(), systemOut);
-                    outputPumper.setName("StreamPumper-systemOut");
-                    outputPumper.start();
+                    if (pumpOutput) {
+                        outputPumper = new StreamPumper(p.getInputStream(), systemOut, streamCharset);
+                        startStreamHandler(outputPumper, "StreamPumper-systemOut");
 
-                    errorPumper = new StreamPumper(p.getErrorStream(), systemErr);
-                    errorPumper.setName("StreamPumper-systemErr");
-                    errorPumper.start();
+                        errorPumper = new StreamPumper(p.getErrorStream(), systemErr, streamCharset);
+                        startStreamHandler(errorPumper, "StreamPumper-systemErr");
+                    }
 
-                    if (timeoutInSeconds > 0 && !p.waitFor(timeoutInSeconds, TimeUnit.SECONDS)) {
-                        throw new CommandLineTimeOutException(
-                                String.format("Process timed out after %d seconds.", timeoutInSeconds));
+                    if (timeout > 0 && !p.waitFor(timeout, unit)) {
+                        throw new CommandLineTimeOutException(String.format(
+                                "Process timed out after %d %s.", timeout, unit.name().toLowerCase(Locale.ENGLISH)));
                     }
 
                     int returnValue = p.waitFor();
@@ -300,18 +681,22 @@ public abstract class CommandLineUtils {
                         inputFeeder.waitUntilDone();
                     }
 
-                    outputPumper.waitUntilDone();
-                    errorPumper.waitUntilDone();
+                    if (outputPumper != null) {
+                        outputPumper.waitUntilDone();
+                    }
+                    if (errorPumper != null) {
+                        errorPumper.waitUntilDone();
+                    }
 
                     if (inputFeeder != null && inputFeeder.getException() != null) {
                         throw new CommandLineException("Failure processing stdin.", inputFeeder.getException());
                     }
 
-                    if (outputPumper.getException() != null) {
+                    if (outputPumper != null && outputPumper.getException() != null) {
                         throw new CommandLineException("Failure processing stdout.", outputPumper.getException());
                     }
 
-                    if (errorPumper.getException() != null) {
+                    if (errorPumper != null && errorPumper.getException() != null) {
                         throw new CommandLineException("Failure processing stderr.", errorPumper.getException());
                     }
 
@@ -333,14 +718,65 @@ public abstract class CommandLineUtils {
                             runAfterProcessTermination.run();
                         }
                     } finally {
-                        ShutdownHookUtils.removeShutdownHook(processHook);
-                        processHook.run();
+                        // unregistered only once terminated, so a shutdown meanwhile still destroys it
+                        ProcessTree.terminate(Collections.singleton(p), terminationGracePeriodMillis);
+                        ProcessRegistry.unregister(p);
                     }
                 }
             }
         };
     }
 
+    /**
+     * Runs a stream feeder or pumper on the stream executor, naming the thread after it while it runs.
+     */
+    private static void startStreamHandler(@Nonnull Runnable handler, @Nonnull String name) {
+        Runnable named = () -> {
+            Thread current = Thread.currentThread();
+            String previous = current.getName();
+            current.setName(name);
+            try {
+                handler.run();
+            } finally {
+                current.setName(previous);
+            }
+        };
+        Executor executor = streamExecutor;
+        try {
+            (executor != null ? executor : DefaultStreamExecutor.INSTANCE).execute(named);
+        } catch (RejectedExecutionException e) {
+            new Thread(named, name).start();
+        }
+    }
+
+    /**
+     * Lazily creates the default stream executor.
+     */
+    private static final class DefaultStreamExecutor {
+        /**
+         * The number of pooled threads (64), further streams get dedicated threads through the rejection.
+         */
+        private static final int MAX_POOLED_THREADS = 64;
+
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                // Java 21+
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                AtomicInteger count = new AtomicInteger();
+                return new ThreadPoolExecutor(
+                        0, MAX_POOLED_THREADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), runnable -> {
+                            Thread thread = new Thread(runnable, "CommandLineUtils-stream-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            thread.setContextClassLoader(null);
+                            return thread;
+                        });
+            }
+        }
+    }
+
     /**
      * Gets the shell environment variables for this process. Note that the returned mapping from variable names to
      * values will always be case-sensitive regardless of the platform, i.e. <code>getSystemEnvVars().get("path")</code>
@@ -70,6 +70,8 @@ public class Commandline implements Cloneable {
 
     private boolean shellEnvironmentInherited = true;
 
+    private boolean shellCommandEnabled = true;
+
     /**
      * Create a new command line object.
      * Shell is autodetected from operating system.
@@ -247,14 +249,33 @@ public class Commandline implements Cloneable {
 
     /**
      * @param mask replace any arguments whose {@code mask} field is {@code true} with asterisks
-     * @return the shell, executable and all defined arguments with masking some arguments if
-     * {@code mask} parameter is on
+     * @return the shell unless {@link #setShellCommandEnabled(boolean) disabled}, executable and all defined arguments
+     * with masking some arguments if {@code mask} parameter is on
      */
     private String[] getShellCommandline(boolean mask) {
+        if (!shellCommandEnabled) {
+            return getDirectCommandline(mask);
+        }
         List<String> shellCommandLine = getShell().getShellCommandLine(getArguments(mask));
         return shellCommandLine.toArray(new String[shellCommandLine.size()]);
     }
 
+    /**
+     * @param mask replace any arguments whose {@code mask} field is {@code true} with asterisks
+     * @return the unquoted executable and all defined arguments, to be run without a shell
+     */
+    private String[] getDirectCommandline(boolean mask) {
+        String executable = shell.getUnquotedExecutable();
+        String[] args = getArguments(mask);
+        if (executable == null) {
+            return args;
+        }
+        String[] result = new String[args.length + 1];
+        result[0] = executable;
+        System.arraycopy(args, 0, result, 1, args.length);
+        return result;
+    }
+
     /**
      * Returns all arguments defined by <code>addLine</code>,
      * <code>addValue</code> or the argument object.
@@ -362,6 +383,31 @@ public class Commandline implements Cloneable {
         this.shellEnvironmentInherited = shellEnvironmentInherited;
     }
 
+    /**
+     * Indicates whether the command is run by the shell, as by default, or started directly.
+     *
+     * @return <code>true</code> if the command is run by the shell, <code>false</code> otherwise.
+     * @since 3.5.0
+     */
+    public boolean isShellCommandEnabled() {
+        return shellCommandEnabled;
+    }
+
+    /**
+     * Specifies whether the command is run by the shell, or the executable is started directly with the arguments
+     * exactly as given. Starting it directly saves starting the shell process and quoting the arguments for it, but
+     * the arguments are not subject to any shell expansion then and the executable must be a program rather than a
+     * shell builtin or script without an interpreter line. The working directory and the environment are applied
+     * either way.
+     *
+     * @param shellCommandEnabled <code>true</code> to run the command by the shell, <code>false</code> to start the
+     *            executable directly.
+     * @since 3.5.0
+     */
+    public void setShellCommandEnabled(boolean shellCommandEnabled) {
+        this.shellCommandEnabled = shellCommandEnabled;
+    }
+
     /**
      * Execute the command.
      *
@@ -369,31 +415,60 @@ public class Commandline implements Cloneable {
      * @throws CommandLineException in case of errors
      */
     public Process execute() throws CommandLineException {
-        Process process;
+        return start(createProcessBuilder());
+    }
 
-        String[] environment = getEnvironmentVariables();
+    /**
+     * Creates a process builder for the shell command line, the environment and the working directory, to be
+     * customized before the process is {@link #start(ProcessBuilder) started}.
+     *
+     * @return the process builder
+     * @throws CommandLineException if an environment variable or the working directory is invalid
+     */
+    ProcessBuilder createProcessBuilder() throws CommandLineException {
+        ProcessBuilder builder = new ProcessBuilder(getShellCommandline());
+
+        Map<String, String> environment = builder.environment();
+        environment.clear();
+        for (String variable : getEnvironmentVariables()) {
+            // Windows has variables like "=C:" for the working directory of each drive
+            int separator = variable.indexOf('=', 1);
+            if (separator < 0) {
+                throw new CommandLineException("Environment variable \"" + variable + "\" has no name or no value.");
+            }
+            try {
+                environment.put(variable.substring(0, separator), variable.substring(separator + 1));
+            } catch (IllegalArgumentException e) {
+                // e.g. a NUL character, which the operating system can't pass on
+                throw new CommandLineException("Environment variable \"" + variable + "\" is invalid.", e);
+            }
+        }
 
         File workingDir = shell.getWorkingDirectory();
+        if (workingDir != null) {
+            if (!workingDir.exists()) {
+                throw new CommandLineException("Working directory \"" + workingDir.getPath() + "\" does not exist!");
+            } else if (!workingDir.isDirectory()) {
+                throw new CommandLineException("Path \"" + workingDir.getPath() + "\" does not specify a directory.");
+            }
+            builder.directory(workingDir);
+        }
+        return builder;
+    }
 
+    /**
+     * Starts a process.
+     *
+     * @param builder the process builder
+     * @return the process
+     * @throws CommandLineException if the process can't be started
+     */
+    static Process start(ProcessBuilder builder) throws CommandLineException {
         try {
-            if (workingDir == null) {
-                process = Runtime.getRuntime().exec(getShellCommandline(), environment);
-            } else {
-                if (!workingDir.exists()) {
-                    throw new CommandLineException(
-                            "Working directory \"" + workingDir.getPath() + "\" does not exist!");
-                } else if (!workingDir.isDirectory()) {
-                    throw new CommandLineException(
-                            "Path \"" + workingDir.getPath() + "\" does not specify a directory.");
-                }
-
-                process = Runtime.getRuntime().exec(getShellCommandline(), environment, workingDir);
-            }
+            return builder.start();
         } catch (IOException ex) {
             throw new CommandLineException("Error while executing process.", ex);
         }
-
-        return process;
     }
 
     /**
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import javax.annotation.Nonnull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of the processes started by {@link CommandLineUtils} that are still running, to destroy them when the
+ * JVM shuts down.
+ * <p>
+ * A single shutdown hook is registered for all processes, as registering one per process contends on the lock of the
+ * JVM's hook registry. It is installed once, when the first process is registered, and stays installed, so forking
+ * processes neither touches the hook registry nor takes a lock. The processes and the processes they started are
+ * first asked to terminate and then, after a grace period, killed.
+ * </p>
+ */
+final class ProcessRegistry {
+    /**
+     * How long processes get to terminate on shutdown before they are killed (1 s).
+     */
+    private static final long GRACE_PERIOD_MILLIS = 1000;
+
+    private static final Set<Process> PROCESSES = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicReference<Thread> HOOK = new AtomicReference<>();
+
+    private ProcessRegistry() {}
+
+    /**
+     * @param process a process to destroy on shutdown
+     */
+    static void register(@Nonnull Process process) {
+        if (HOOK.get() == null) {
+            Thread hook = new Thread(() -> destroyAll(GRACE_PERIOD_MILLIS), "CommandLineUtils process shutdown hook");
+            hook.setContextClassLoader(null);
+            if (HOOK.compareAndSet(null, hook)) {
+                ShutdownHookUtils.addShutDownHook(hook);
+            }
+        }
+        PROCESSES.add(process);
+    }
+
+    /**
+     * @param process a process not to destroy on shutdown anymore
+     */
+    static void unregister(@Nonnull Process process) {
+        PROCESSES.remove(process);
+    }
+
+    /**
+     * @return the number of processes registered
+     */
+    static int size() {
+        return PROCESSES.size();
+    }
+
+    /**
+     * @return the shutdown hook, {@code null} until the first process is registered
+     */
+    static Thread hook() {
+        return HOOK.get();
+    }
+
+    /**
+     * Destroys all registered processes and their descendants, killing those still alive after the grace period.
+     *
+     * @param gracePeriodMillis how long to wait for the processes to terminate
+     */
+    static void destroyAll(long gracePeriodMillis) {
+        List<Process> processes = new ArrayList<>(PROCESSES);
+        ProcessTree.terminate(processes, gracePeriodMillis);
+        PROCESSES.removeAll(processes);
+    }
+}
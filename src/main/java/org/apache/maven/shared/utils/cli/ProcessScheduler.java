@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent command lines concurrently, starting no more than a given number of processes at a time.
+ * <p>
+ * Every command line submitted gets a future completed with its exit code, or exceptionally with the
+ * {@link CommandLineException} {@link CommandLineUtils#executeCommandLine(Commandline, InputStream, StreamConsumer,
+ * StreamConsumer, int) executing} it failed with. Cancelling the future of a command line that is still waiting
+ * means it never starts; cancelling a running one kills its process. The output of all processes is pumped by the
+ * {@link CommandLineUtils#setStreamExecutor(java.util.concurrent.Executor) shared stream executor}.
+ * </p>
+ *
+ * @since 3.5.0
+ */
+public class ProcessScheduler implements AutoCloseable {
+    private static final AtomicInteger SCHEDULERS = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    private final Set<CompletableFuture<Integer>> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a scheduler running as many processes at a time as there are processors available.
+     */
+    public ProcessScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param maxConcurrency the maximum number of processes to run at a time
+     */
+    public ProcessScheduler(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        String prefix = "ProcessScheduler-" + SCHEDULERS.incrementAndGet() + "-";
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                maxConcurrency, maxConcurrency, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(null);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the maximum number of processes run at a time
+     */
+    public int getMaxConcurrency() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Schedules a command line without input and timeout.
+     *
+     * @param cl        The command line to execute
+     * @param systemOut A consumer that receives output, must be thread safe
+     * @param systemErr A consumer that receives system error stream output, must be thread safe
+     * @return the future exit code of the process
+     */
+    @Nonnull
+    public CompletableFuture<Integer> submit(
+            @Nonnull Commandline cl, @Nullable StreamConsumer systemOut, @Nullable StreamConsumer systemErr) {
+        return submit(cl, null, systemOut, systemErr, 0);
+    }
+
+    /**
+     * Schedules a command line.
+     *
+     * @param cl               The command line to execute
+     * @param systemIn         The input to read from, must be thread safe
+     * @param systemOut        A consumer that receives output, must be thread safe
+     * @param systemErr        A consumer that receives system error stream output, must be thread safe
+     * @param timeoutInSeconds Positive integer to specify timeout, zero and negative integers for no timeout. The
+     *                         time spent waiting for a turn doesn't count.
+     * @return the future exit code of the process, completed exceptionally with a
+     *     {@link CommandLineTimeOutException} if the timeout is exceeded
+     */
+    @Nonnull
+    public CompletableFuture<Integer> submit(
+            @Nonnull Commandline cl,
+            @Nullable InputStream systemIn,
+            @Nullable StreamConsumer systemOut,
+            @Nullable StreamConsumer systemErr,
+            int timeoutInSeconds) {
+        return submit(cl, systemIn, systemOut, systemErr, Duration.ofSeconds(Math.max(timeoutInSeconds, 0)));
+    }
+
+    /**
+     * Schedules a command line.
+     *
+     * @param cl        The command line to execute
+     * @param systemIn  The input to read from, must be thread safe
+     * @param systemOut A consumer that receives output, must be thread safe
+     * @param systemErr A consumer that receives system error stream output, must be thread safe
+     * @param timeout   Positive duration to specify timeout, {@code null}, zero and negative durations for no timeout.
+     *                  The time spent waiting for a turn doesn't count.
+     * @return the future exit code of the process, completed exceptionally with a
+     *     {@link CommandLineTimeOutException} if the timeout is exceeded
+     */
+    @Nonnull
+    public CompletableFuture<Integer> submit(
+            @Nonnull Commandline cl,
+            @Nullable InputStream systemIn,
+            @Nullable StreamConsumer systemOut,
+            @Nullable StreamConsumer systemErr,
+            @Nullable Duration timeout) {
+        Task task = new Task(cl, systemIn, systemOut, systemErr, timeout);
+        pending.add(task.future);
+        task.future.whenComplete((exitCode, failure) -> {
+            pending.remove(task.future);
+            if (task.future.isCancelled()) {
+                task.interrupt();
+            }
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+        }
+        return task.future;
+    }
+
+    /**
+     * Cancels all command lines not finished yet, killing the running processes, and stops accepting new ones.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        List<CompletableFuture<Integer>> unfinished = new ArrayList<>(pending);
+        for (CompletableFuture<Integer> future : unfinished) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * A command line waiting for its turn or running.
+     */
+    private static final class Task implements Runnable {
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        private final Commandline cl;
+
+        private final InputStream systemIn;
+
+        private final StreamConsumer systemOut;
+
+        private final StreamConsumer systemErr;
+
+        private final Duration timeout;
+
+        /**
+         * The thread running the command line, guarded by this task.
+         */
+        private Thread runner;
+
+        Task(
+                Commandline cl,
+                InputStream systemIn,
+                StreamConsumer systemOut,
+                StreamConsumer systemErr,
+                Duration timeout) {
+            this.cl = cl;
+            this.systemIn = systemIn;
+            this.systemOut = systemOut;
+            this.systemErr = systemErr;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (future.isDone()) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                future.complete(CommandLineUtils.executeCommandLine(cl, systemIn, systemOut, systemErr, timeout));
+            } catch (CommandLineException | RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                // don't leave a cancellation meant for this task to the next one
+                Thread.interrupted();
+            }
+        }
+
+        synchronized void interrupt() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+}
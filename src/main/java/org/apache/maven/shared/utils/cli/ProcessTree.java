@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import javax.annotation.Nonnull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Terminates processes together with the processes they started, such as the command run by the shell wrapping it.
+ * <p>
+ * The processes are first asked to terminate and then, once a grace period has passed, killed. The descendants of a
+ * process are only known on Java 9 and later, through {@code ProcessHandle}, which is looked up reflectively so this
+ * class still runs on Java 8, where only the processes themselves are terminated.
+ * </p>
+ */
+final class ProcessTree {
+    private static final Method TO_HANDLE;
+
+    private static final Method DESCENDANTS;
+
+    private static final Method IS_ALIVE;
+
+    private static final Method DESTROY;
+
+    private static final Method DESTROY_FORCIBLY;
+
+    private static final Method ON_EXIT;
+
+    static {
+        Method[] methods = new Method[6];
+        try {
+            // Java 9+
+            Class<?> handle = Class.forName("java.lang.ProcessHandle");
+            methods[0] = Process.class.getMethod("toHandle");
+            methods[1] = handle.getMethod("descendants");
+            methods[2] = handle.getMethod("isAlive");
+            methods[3] = handle.getMethod("destroy");
+            methods[4] = handle.getMethod("destroyForcibly");
+            methods[5] = handle.getMethod("onExit");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            methods = new Method[6];
+        }
+        TO_HANDLE = methods[0];
+        DESCENDANTS = methods[1];
+        IS_ALIVE = methods[2];
+        DESTROY = methods[3];
+        DESTROY_FORCIBLY = methods[4];
+        ON_EXIT = methods[5];
+    }
+
+    private ProcessTree() {}
+
+    /**
+     * @return whether the descendants of processes are terminated as well
+     */
+    static boolean isDescendantsSupported() {
+        return TO_HANDLE != null;
+    }
+
+    /**
+     * Terminates processes that are still alive and their descendants, killing those still alive after the grace
+     * period.
+     *
+     * @param processes the processes to terminate
+     * @param gracePeriodMillis how long to wait for the processes to terminate, zero to kill them right away
+     */
+    static void terminate(@Nonnull Collection<Process> processes, long gracePeriodMillis) {
+        List<Process> alive = new ArrayList<>();
+        List<Object> descendants = new ArrayList<>();
+        for (Process process : processes) {
+            if (process.isAlive()) {
+                alive.add(process);
+                // before the process exits and its children are handed over to another parent
+                descendants.addAll(descendants(process));
+            }
+        }
+        if (alive.isEmpty()) {
+            return;
+        }
+
+        if (gracePeriodMillis > 0) {
+            for (Process process : alive) {
+                process.destroy();
+            }
+            for (Object descendant : descendants) {
+                invoke(DESTROY, descendant);
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gracePeriodMillis);
+            try {
+                for (Process process : alive) {
+                    process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                for (Object descendant : descendants) {
+                    awaitExit(descendant, Math.max(0, deadline - System.nanoTime()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (Process process : alive) {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+        for (Object descendant : descendants) {
+            if (Boolean.TRUE.equals(invoke(IS_ALIVE, descendant))) {
+                invoke(DESTROY_FORCIBLY, descendant);
+            }
+        }
+    }
+
+    @Nonnull
+    private static List<Object> descendants(@Nonnull Process process) {
+        if (TO_HANDLE == null) {
+            return Collections.emptyList();
+        }
+        Object stream = invoke(DESCENDANTS, invoke(TO_HANDLE, process));
+        if (!(stream instanceof Stream)) {
+            return Collections.emptyList();
+        }
+        return ((Stream<?>) stream).collect(Collectors.toList());
+    }
+
+    private static void awaitExit(@Nonnull Object handle, long timeoutNanos) throws InterruptedException {
+        Object exit = invoke(ON_EXIT, handle);
+        if (exit instanceof CompletableFuture) {
+            try {
+                ((CompletableFuture<?>) exit).get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // killed below
+            }
+        }
+    }
+
+    private static Object invoke(Method method, Object target) {
+        try {
+            return method.invoke(target);
+        } catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
+            // the process is gone or can't be controlled, e.g. due to a security manager
+            return null;
+        }
+    }
+}
@@ -21,24 +21,56 @@ package org.apache.maven.shared.utils.cli;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Poll InputStream for available data and write the output to an OutputStream.
+ * Copy an InputStream to an OutputStream as the data arrives.
+ * <p>
+ * The input is read with blocking reads through an interruptible {@link Channels#newChannel(InputStream) channel}, so
+ * input reaches the output as soon as it arrives and the feeder doesn't wake up while there is none. The output is
+ * only flushed when the input has no more data available, so bulk input is written in large chunks, and it is closed
+ * once the input ends. {@link #waitUntilDone()} interrupts a pending read, which closes the channel and with it the
+ * input.
+ * </p>
+ * <p>
+ * The one exception is the JVM's standard input {@link System#in}, which the caller usually keeps reading after the
+ * process is done: it must neither be closed nor have a pending read take its next line. It is polled for
+ * {@link InputStream#available() available} data instead, waiting between polls from 1 ms up to
+ * {@value #MAX_POLL_WAIT_MILLIS} ms while there is none.
+ * </p>
  *
  * @author <a href="mailto:trygvis@inamo.no">Trygve Laugst&oslash;l</a>
  */
-class StreamPollFeeder extends Thread {
+class StreamPollFeeder implements Runnable {
 
-    public static final int BUF_LEN = 80;
+    public static final int BUF_LEN = 8192;
+
+    /**
+     * The longest wait between two polls of the standard input without available data.
+     */
+    private static final long MAX_POLL_WAIT_MILLIS = 100;
+
+    /**
+     * How long {@link #waitUntilDone()} waits for an interrupted read to give up.
+     */
+    private static final long CANCEL_TIMEOUT_MILLIS = 1000;
 
     private final InputStream input;
     private final OutputStream output;
+    private final int bufferSize;
 
-    private Throwable exception;
+    private volatile Throwable exception;
 
     private boolean done;
+    private Thread runner;
     private final Object lock = new Object();
+    private final CountDownLatch finished = new CountDownLatch(1);
 
     /**
      * Create a new StreamPollFeeder
@@ -47,40 +79,115 @@ class StreamPollFeeder extends Thread {
      * @param output Stream to write to
      */
     StreamPollFeeder(InputStream input, OutputStream output) {
+        this(input, output, BUF_LEN);
+    }
+
+    /**
+     * Create a new StreamPollFeeder
+     *
+     * @param input  Stream to read from
+     * @param output Stream to write to
+     * @param bufferSize the maximum number of bytes read at once
+     */
+    StreamPollFeeder(InputStream input, OutputStream output, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
         this.input = Objects.requireNonNull(input);
         this.output = Objects.requireNonNull(output);
-        this.done = false;
+        this.bufferSize = bufferSize;
     }
 
     @Override
     public void run() {
+        boolean poll = input == System.in;
+        synchronized (lock) {
+            if (done) {
+                close();
+                finished.countDown();
+                return;
+            }
+            if (!poll) {
+                runner = Thread.currentThread();
+            }
+        }
 
-        byte[] buf = new byte[BUF_LEN];
+        byte[] buf = new byte[bufferSize];
 
         try {
-            while (!done) {
-                if (input.available() > 0) {
-                    int i = input.read(buf);
-                    if (i > 0) {
-                        output.write(buf, 0, i);
-                        output.flush();
-                    } else {
-                        done = true;
-                    }
-                } else {
-                    synchronized (lock) {
-                        if (!done) {
-                            lock.wait(100);
-                        }
-                    }
-                }
+            if (poll) {
+                poll(buf);
+            } else {
+                read(buf);
             }
         } catch (IOException e) {
-            exception = e;
+            // a read interrupted by waitUntilDone fails with a ClosedByInterruptException
+            if (!(isDone() && e instanceof ClosedChannelException)) {
+                exception = e;
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         } finally {
+            synchronized (lock) {
+                if (runner != null) {
+                    runner = null;
+                    // don't leave an interrupt meant for this feeder to whatever runs next on this thread
+                    Thread.interrupted();
+                }
+            }
             close();
+            finished.countDown();
+        }
+    }
+
+    private void read(byte[] buf) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(input);
+        ByteBuffer buffer = ByteBuffer.wrap(buf);
+        while (!isDone()) {
+            buffer.clear();
+            int n = channel.read(buffer);
+            if (n < 0) {
+                return;
+            }
+            if (isDone()) {
+                // cancelled while the read was pending
+                return;
+            }
+            output.write(buf, 0, n);
+            if (input.available() <= 0) {
+                output.flush();
+            }
+        }
+    }
+
+    private void poll(byte[] buf) throws IOException, InterruptedException {
+        long wait = 1;
+        while (!isDone()) {
+            int available = input.available();
+            if (available > 0) {
+                int i = input.read(buf, 0, Math.min(available, buf.length));
+                if (i < 0) {
+                    return;
+                }
+                output.write(buf, 0, i);
+                if (input.available() <= 0) {
+                    output.flush();
+                }
+                wait = 1;
+            } else {
+                synchronized (lock) {
+                    if (!done) {
+                        lock.wait(wait);
+                    }
+                }
+                wait = Math.min(wait * 2, MAX_POLL_WAIT_MILLIS);
+            }
+        }
+    }
+
+    private boolean isDone() {
+        synchronized (lock) {
+            return done;
         }
     }
 
@@ -88,7 +195,7 @@ class StreamPollFeeder extends Thread {
         try {
             output.close();
         } catch (IOException e) {
-            if (exception == null) {
+            if (exception == null && !isDone()) {
                 exception = e;
             }
         }
@@ -101,15 +208,22 @@ class StreamPollFeeder extends Thread {
         return this.exception;
     }
 
+    /**
+     * Stops feeding, interrupting a pending read, and waits for the feeder to finish. A read that ignores the
+     * interrupt is given up on after a short time, the data it eventually returns is discarded.
+     */
     public void waitUntilDone() {
 
         synchronized (lock) {
             done = true;
             lock.notifyAll();
+            if (runner != null) {
+                runner.interrupt();
+            }
         }
 
         try {
-            join();
+            finished.await(CANCEL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -24,17 +24,34 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.shared.utils.io.BufferPool;
 
 /**
  * Class to pump the error stream during Process's runtime. Copied from the Ant built-in task.
+ * <p>
+ * A pumper may be started as a thread of its own or be passed to an {@link java.util.concurrent.Executor} as a
+ * plain {@link Runnable}; {@link #waitUntilDone()} works either way.
+ * </p>
+ * <p>
+ * Lines are passed to a {@link BatchStreamConsumer} in batches and to any other consumer one by one. A
+ * {@link ByteStreamConsumer} gets the bytes as they are read, without decoding them into lines.
+ * </p>
  *
  * @author <a href="mailto:fvancea@maxiq.com">Florin Vancea </a>
  * @author <a href="mailto:pj@thoughtworks.com">Paul Julius </a>
  */
 public class StreamPumper extends AbstractStreamHandler {
-    private final BufferedReader in;
+    private final InputStream in;
+
+    @Nullable
+    private final Charset charset;
 
     private final StreamConsumer consumer;
 
@@ -42,12 +59,27 @@ public class StreamPumper extends AbstractStreamHandler {
 
     private static final int SIZE = 1024;
 
+    /**
+     * The maximum number of bytes passed to a {@link ByteStreamConsumer} at once.
+     */
+    private static final int BYTES_SIZE = 8192;
+
+    /**
+     * The maximum number of lines passed to a {@link BatchStreamConsumer} at once.
+     */
+    private static final int MAX_BATCH_LINES = 1024;
+
+    /**
+     * The maximum time a line waits for more lines before it is passed to a {@link BatchStreamConsumer} (50 ms).
+     */
+    private static final long MAX_BATCH_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
     /**
      * @param in {@link InputStream}
      * @param consumer {@link StreamConsumer}
      */
     public StreamPumper(InputStream in, StreamConsumer consumer) {
-        this(new InputStreamReader(in), consumer);
+        this(in, consumer, null);
     }
 
     /**
@@ -56,29 +88,32 @@ public class StreamPumper extends AbstractStreamHandler {
      * @param charset {@link Charset}
      */
     public StreamPumper(InputStream in, StreamConsumer consumer, @Nullable Charset charset) {
-        this(null == charset ? new InputStreamReader(in) : new InputStreamReader(in, charset), consumer);
-    }
-
-    /**
-     * @param in {@link Reader}
-     * @param consumer {@link StreamConsumer}
-     */
-    private StreamPumper(Reader in, StreamConsumer consumer) {
         super();
-        this.in = new BufferedReader(in, SIZE);
+        this.in = Objects.requireNonNull(in);
+        this.charset = charset;
         this.consumer = consumer;
     }
 
     /** run it. */
     public void run() {
         try {
-            for (String line = in.readLine(); line != null; line = in.readLine()) {
-                try {
-                    if (exception == null) {
-                        consumeLine(line);
+            if (consumer instanceof ByteStreamConsumer) {
+                pumpBytes((ByteStreamConsumer) consumer);
+            } else {
+                BufferedReader reader = new BufferedReader(
+                        null == charset ? new InputStreamReader(in) : new InputStreamReader(in, charset), SIZE);
+                if (consumer instanceof BatchStreamConsumer) {
+                    pumpBatches(reader, (BatchStreamConsumer) consumer);
+                } else {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        try {
+                            if (exception == null) {
+                                consumeLine(line);
+                            }
+                        } catch (Exception t) {
+                            exception = t;
+                        }
                     }
-                } catch (Exception t) {
-                    exception = t;
                 }
             }
         } catch (IOException e) {
@@ -127,6 +162,96 @@ public class StreamPumper extends AbstractStreamHandler {
         return exception;
     }
 
+    /**
+     * Passes the lines read to the consumer in batches, each delivered once it is full, once its first line waited
+     * long enough, or before a read could block. Lines are split here rather than by {@link BufferedReader#readLine()},
+     * which would block on a partial line while holding back the complete lines read before it.
+     */
+    private void pumpBatches(BufferedReader reader, BatchStreamConsumer batchConsumer) throws IOException {
+        List<String> batch = new ArrayList<>(MAX_BATCH_LINES);
+        StringBuilder line = new StringBuilder(SIZE);
+        boolean skipLineFeed = false;
+        long batchStart = 0;
+        char[] chars = BufferPool.takeChars(SIZE);
+        try {
+            while (true) {
+                if (!batch.isEmpty() && !reader.ready()) {
+                    consumeLines(batchConsumer, batch);
+                }
+                int n = reader.read(chars, 0, SIZE);
+                if (n < 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    char c = chars[i];
+                    if (skipLineFeed) {
+                        skipLineFeed = false;
+                        if (c == '\n') {
+                            continue;
+                        }
+                    }
+                    if (c != '\n' && c != '\r') {
+                        line.append(c);
+                        continue;
+                    }
+                    // same line terminators as readLine: \n, \r or \r\n
+                    skipLineFeed = c == '\r';
+                    if (exception == null) {
+                        if (batch.isEmpty()) {
+                            batchStart = System.nanoTime();
+                        }
+                        batch.add(line.toString());
+                        if (batch.size() >= MAX_BATCH_LINES
+                                || System.nanoTime() - batchStart >= MAX_BATCH_LATENCY_NANOS) {
+                            consumeLines(batchConsumer, batch);
+                        }
+                    }
+                    line.setLength(0);
+                }
+            }
+        } finally {
+            BufferPool.release(chars);
+        }
+        if (line.length() > 0 && exception == null) {
+            batch.add(line.toString());
+        }
+        if (!batch.isEmpty()) {
+            consumeLines(batchConsumer, batch);
+        }
+    }
+
+    /**
+     * Passes the bytes read to the consumer as they arrive, without decoding them.
+     */
+    private void pumpBytes(ByteStreamConsumer byteConsumer) throws IOException {
+        byte[] buffer = BufferPool.takeBytes(BYTES_SIZE);
+        try {
+            for (int n = in.read(buffer, 0, BYTES_SIZE); n >= 0; n = in.read(buffer, 0, BYTES_SIZE)) {
+                try {
+                    if (n > 0 && exception == null && !isDisabled()) {
+                        byteConsumer.consume(ByteBuffer.wrap(buffer, 0, n));
+                    }
+                } catch (Exception t) {
+                    exception = t;
+                }
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private void consumeLines(BatchStreamConsumer batchConsumer, List<String> batch) {
+        try {
+            if (exception == null && !isDisabled()) {
+                batchConsumer.consumeLines(batch);
+            }
+        } catch (Exception t) {
+            exception = t;
+        } finally {
+            batch.clear();
+        }
+    }
+
     private void consumeLine(String line) throws IOException {
         if (consumer != null && !isDisabled()) {
             consumer.consumeLine(line);
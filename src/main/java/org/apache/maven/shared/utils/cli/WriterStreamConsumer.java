@@ -21,12 +21,13 @@ package org.apache.maven.shared.utils.cli;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.List;
 
 /**
  * @author <a href="mailto:jason@maven.org">Jason van Zyl</a>
  *
  */
-public class WriterStreamConsumer implements StreamConsumer {
+public class WriterStreamConsumer implements BatchStreamConsumer {
 
     private final BufferedWriter writer;
 
@@ -47,4 +48,16 @@ public class WriterStreamConsumer implements StreamConsumer {
         this.writer.newLine();
         this.writer.flush();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void consumeLines(List<String> lines) throws IOException {
+        for (String line : lines) {
+            this.writer.append(line);
+            this.writer.newLine();
+        }
+        this.writer.flush();
+    }
 }
@@ -298,6 +298,14 @@ public class Shell implements Cloneable {
         return executable;
     }
 
+    /**
+     * @return The executable as it was set, without the quoting {@link #getExecutable()} may add for the shell.
+     * @since 3.5.0
+     */
+    public String getUnquotedExecutable() {
+        return executable;
+    }
+
     /**
      * Sets execution directory.
      * @param path The path which should be used as working directory.
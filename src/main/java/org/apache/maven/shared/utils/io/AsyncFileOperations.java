@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Non-blocking counterparts of the basic {@link FileUtils} operations.
+ * <p>
+ * Reads, writes and copies are done through {@link AsynchronousFileChannel}s whose completions run on the executor
+ * given to the constructor, so many operations can be in flight with a small number of threads. Deletions, which
+ * have no asynchronous API, run as tasks on the same executor. All returned futures complete exceptionally with the
+ * {@link IOException} of a failed operation.
+ * </p>
+ * <pre>
+ * AsyncFileOperations async = new AsyncFileOperations( executor );
+ * async.read( template, "UTF-8" )
+ *     .thenApply( content -&gt; content.replace( "${name}", name ) )
+ *     .thenCompose( content -&gt; async.write( target, "UTF-8", content ) );
+ * </pre>
+ *
+ * @since 3.5.0
+ */
+public class AsyncFileOperations {
+    /**
+     * The size of the chunks a copy reads and writes at once (64 KB).
+     */
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+    private static final Set<StandardOpenOption> READ = EnumSet.of(StandardOpenOption.READ);
+
+    private static final Set<StandardOpenOption> WRITE =
+            EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor the executor running completions and deletions, owned by the caller
+     */
+    public AsyncFileOperations(@Nonnull ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Read the content of a file.
+     *
+     * @param file the file to read
+     * @return the content of the file
+     */
+    @Nonnull
+    public CompletableFuture<byte[]> readAllBytes(@Nonnull File file) {
+        final AsynchronousFileChannel channel;
+        final ByteBuffer buffer;
+        try {
+            channel = open(file.toPath(), READ);
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                channel.close();
+                throw new IOException("File " + file + " is too large to be read into an array");
+            }
+            buffer = ByteBuffer.allocate((int) size);
+        } catch (IOException e) {
+            return failed(e);
+        }
+
+        CompletableFuture<Void> read = new CompletableFuture<>();
+        new Transfer(channel, null, buffer, read).read();
+        // the file may have shrunk meanwhile
+        CompletableFuture<byte[]> content = read.thenApply(
+                ignored -> buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array());
+        return closeWhenDone(content, channel);
+    }
+
+    /**
+     * Read the content of a file as text, reporting malformed input like {@link FileUtils#fileRead(File, String)}.
+     *
+     * @param file     the file to read
+     * @param encoding the encoding of the file, the platform encoding if {@code null} or empty
+     * @return the content of the file
+     */
+    @Nonnull
+    public CompletableFuture<String> read(@Nonnull File file, @Nullable String encoding) {
+        return readAllBytes(file).thenApply(bytes -> {
+            try {
+                return FileUtils.charset(encoding)
+                        .newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+                        .decode(ByteBuffer.wrap(bytes))
+                        .toString();
+            } catch (CharacterCodingException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Write data to a file, replacing its content. The file will be created if it does not exist.
+     *
+     * @param file the file to write
+     * @param data the content to write to the file
+     * @return a future completed once the data is written
+     */
+    @Nonnull
+    public CompletableFuture<Void> write(@Nonnull File file, @Nonnull byte[] data) {
+        return write(file, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Write text to a file, replacing its content. The file will be created if it does not exist. Like
+     * {@link FileUtils#fileWriteAtomic(File, String, String, boolean)}, fails with a
+     * {@link CharacterCodingException} instead of replacing characters the encoding can't represent.
+     *
+     * @param file     the file to write
+     * @param encoding the encoding of the file, the platform encoding if {@code null} or empty
+     * @param data     the content to write to the file
+     * @return a future completed once the data is written
+     */
+    @Nonnull
+    public CompletableFuture<Void> write(@Nonnull File file, @Nullable String encoding, @Nonnull String data) {
+        final ByteBuffer buffer;
+        try {
+            buffer = FileUtils.encode(FileUtils.charset(encoding), data);
+        } catch (IOException | IllegalArgumentException e) {
+            return failed(e);
+        }
+        return write(file, buffer);
+    }
+
+    private CompletableFuture<Void> write(@Nonnull File file, @Nonnull ByteBuffer data) {
+        final AsynchronousFileChannel channel;
+        try {
+            channel = open(file.toPath(), WRITE);
+        } catch (IOException e) {
+            return failed(e);
+        }
+
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        new Transfer(null, channel, data, written).write();
+        return closeWhenDone(written, channel);
+    }
+
+    /**
+     * Copy the content and the permissions of a file, like {@link FileUtils#copyFile(File, File)} does. Missing
+     * parent directories of the destination are created, symbolic links are followed.
+     *
+     * @param source      an existing file to copy
+     * @param destination the file to copy to, replaced if it exists
+     * @return a future completed once the copy is done
+     */
+    @Nonnull
+    public CompletableFuture<Void> copy(@Nonnull File source, @Nonnull File destination) {
+        final AsynchronousFileChannel from;
+        final AsynchronousFileChannel to;
+        try {
+            if (!source.exists()) {
+                throw new IOException("File " + source + " does not exist");
+            }
+            if (destination.exists() && Files.isSameFile(source.toPath(), destination.toPath())) {
+                return CompletableFuture.completedFuture(null);
+            }
+            FileUtils.mkdirsFor(destination);
+            from = open(source.toPath(), READ);
+            try {
+                to = open(destination.toPath(), WRITE);
+            } catch (IOException e) {
+                from.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            return failed(e);
+        }
+
+        CompletableFuture<Void> copied = new CompletableFuture<>();
+        new Transfer(from, to, ByteBuffer.allocate(COPY_CHUNK_SIZE), copied).read();
+        return closeWhenDone(closeWhenDone(copied, to), from).thenRunAsync(
+                () -> {
+                    try {
+                        FileUtils.copyFilePermissions(source, destination);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                executor);
+    }
+
+    /**
+     * Delete a file or a directory with all its content. Symbolic links are deleted, never followed.
+     *
+     * @param file the file or directory to delete
+     * @return a future completed once the file is gone
+     */
+    @Nonnull
+    public CompletableFuture<Void> delete(@Nonnull final File file) {
+        return CompletableFuture.runAsync(
+                () -> {
+                    Path path = file.toPath();
+                    try {
+                        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                            DirectoryDeleter.delete(path, true);
+                        } else {
+                            Files.deleteIfExists(path);
+                        }
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                executor);
+    }
+
+    private AsynchronousFileChannel open(Path path, Set<? extends OpenOption> options) throws IOException {
+        return AsynchronousFileChannel.open(path, options, executor);
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    /**
+     * @return a future completed like {@code future}, but only after {@code channel} is closed
+     */
+    private static <T> CompletableFuture<T> closeWhenDone(
+            CompletableFuture<T> future, final AsynchronousFileChannel channel) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, failure) -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause()
+                    : failure;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (cause == null) {
+                    cause = e;
+                } else {
+                    cause.addSuppressed(e);
+                }
+            }
+            if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Moves bytes through a buffer: reads the source until the buffer is full or the source is exhausted, then writes
+     * the buffer out to the target, and starts over. A missing source just writes the buffer once, a missing target
+     * just fills it once.
+     */
+    private static final class Transfer implements CompletionHandler<Integer, Boolean> {
+        private static final Boolean READING = Boolean.TRUE;
+
+        private static final Boolean WRITING = Boolean.FALSE;
+
+        private final AsynchronousFileChannel source;
+
+        private final AsynchronousFileChannel target;
+
+        private final ByteBuffer buffer;
+
+        private final CompletableFuture<Void> done;
+
+        private long readPosition;
+
+        private long writePosition;
+
+        private boolean endOfSource;
+
+        Transfer(
+                @Nullable AsynchronousFileChannel source,
+                @Nullable AsynchronousFileChannel target,
+                ByteBuffer buffer,
+                CompletableFuture<Void> done) {
+            this.source = source;
+            this.target = target;
+            this.buffer = buffer;
+            this.done = done;
+            this.endOfSource = source == null;
+        }
+
+        void read() {
+            try {
+                if (!buffer.hasRemaining()) {
+                    // nothing to read into, e.g. an empty file
+                    completed(0, READING);
+                } else {
+                    source.read(buffer, readPosition, READING, this);
+                }
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        void write() {
+            try {
+                target.write(buffer, writePosition, WRITING, this);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void completed(Integer count, Boolean attachment) {
+            if (attachment == READING) {
+                if (count < 0) {
+                    endOfSource = true;
+                } else {
+                    readPosition += count;
+                }
+                if (!endOfSource && buffer.hasRemaining()) {
+                    read();
+                } else if (target == null) {
+                    done.complete(null);
+                } else {
+                    ((Buffer) buffer).flip();
+                    writeOrFinish();
+                }
+            } else {
+                writePosition += count;
+                writeOrFinish();
+            }
+        }
+
+        private void writeOrFinish() {
+            if (buffer.hasRemaining()) {
+                write();
+            } else if (endOfSource) {
+                done.complete(null);
+            } else {
+                ((Buffer) buffer).clear();
+                read();
+            }
+        }
+
+        @Override
+        public void failed(Throwable failure, Boolean attachment) {
+            done.completeExceptionally(failure);
+        }
+    }
+}
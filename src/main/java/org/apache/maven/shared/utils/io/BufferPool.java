@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a few byte and char arrays per thread, so hot copy loops don't allocate a new buffer on every call.
+ * <p>
+ * A buffer is taken with {@link #takeBytes(int)} or {@link #takeChars(int)} and must be handed back with
+ * {@link #release(byte[])} or {@link #release(char[])} once it is no longer used, typically in a {@code finally}
+ * block. Taken buffers are removed from the pool, so nested or recursive callers never share a buffer. A buffer may
+ * be larger than requested and still contains the data of its previous use.
+ * </p>
+ * <p>
+ * Only arrays are held by the thread-local slots, so a pool populated by a thread outliving the class loader of
+ * this class, e.g. a plugin class loader, doesn't keep that class loader reachable.
+ * </p>
+ *
+ * @since 3.5.0
+ */
+public final class BufferPool {
+    /**
+     * The number of byte and char arrays kept per thread.
+     */
+    private static final int SLOTS = 4;
+
+    /**
+     * The default of the largest buffer kept (64 KB).
+     */
+    private static final int DEFAULT_MAX_POOLED_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[][]> BYTES = new ThreadLocal<>();
+
+    private static final ThreadLocal<char[][]> CHARS = new ThreadLocal<>();
+
+    private static final LongAdder HITS = new LongAdder();
+
+    private static final LongAdder MISSES = new LongAdder();
+
+    private static volatile int maxPooledSize = DEFAULT_MAX_POOLED_SIZE;
+
+    private BufferPool() {}
+
+    /**
+     * Set the length of the largest buffer kept in the pool. Larger buffers are allocated on every request.
+     *
+     * @param size the maximum length of a pooled array, {@code 0} to disable pooling
+     */
+    public static void setMaxPooledSize(int size) {
+        maxPooledSize = Math.max(0, size);
+    }
+
+    /**
+     * @return the maximum length of a pooled array
+     */
+    public static int getMaxPooledSize() {
+        return maxPooledSize;
+    }
+
+    /**
+     * Take a byte array from the pool of the current thread.
+     *
+     * @param size the minimum length of the array
+     * @return an array of at least {@code size} bytes
+     * @throws NegativeArraySizeException if {@code size} is negative
+     */
+    @Nonnull
+    public static byte[] takeBytes(int size) {
+        if (size <= 0 || size > maxPooledSize) {
+            return new byte[size];
+        }
+        byte[][] slots = BYTES.get();
+        if (slots != null) {
+            for (int i = 0; i < SLOTS; i++) {
+                byte[] buffer = slots[i];
+                if (buffer != null && buffer.length >= size) {
+                    slots[i] = null;
+                    HITS.increment();
+                    return buffer;
+                }
+            }
+        }
+        MISSES.increment();
+        return new byte[size];
+    }
+
+    /**
+     * Hand a byte array back to the pool of the current thread.
+     *
+     * @param buffer the array, which must not be used anymore
+     */
+    public static void release(@Nonnull byte[] buffer) {
+        if (buffer.length == 0 || buffer.length > maxPooledSize) {
+            return;
+        }
+        byte[][] slots = BYTES.get();
+        if (slots == null) {
+            slots = new byte[SLOTS][];
+            BYTES.set(slots);
+        }
+        int smallest = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            if (slots[i] == null) {
+                slots[i] = buffer;
+                return;
+            }
+            if (slots[i].length < slots[smallest].length) {
+                smallest = i;
+            }
+        }
+        if (slots[smallest].length < buffer.length) {
+            slots[smallest] = buffer;
+        }
+    }
+
+    /**
+     * Take a char array from the pool of the current thread.
+     *
+     * @param size the minimum length of the array
+     * @return an array of at least {@code size} chars
+     * @throws NegativeArraySizeException if {@code size} is negative
+     */
+    @Nonnull
+    public static char[] takeChars(int size) {
+        if (size <= 0 || size > maxPooledSize) {
+            return new char[size];
+        }
+        char[][] slots = CHARS.get();
+        if (slots != null) {
+            for (int i = 0; i < SLOTS; i++) {
+                char[] buffer = slots[i];
+                if (buffer != null && buffer.length >= size) {
+                    slots[i] = null;
+                    HITS.increment();
+                    return buffer;
+                }
+            }
+        }
+        MISSES.increment();
+        return new char[size];
+    }
+
+    /**
+     * Hand a char array back to the pool of the current thread.
+     *
+     * @param buffer the array, which must not be used anymore
+     */
+    public static void release(@Nonnull char[] buffer) {
+        if (buffer.length == 0 || buffer.length > maxPooledSize) {
+            return;
+        }
+        char[][] slots = CHARS.get();
+        if (slots == null) {
+            slots = new char[SLOTS][];
+            CHARS.set(slots);
+        }
+        int smallest = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            if (slots[i] == null) {
+                slots[i] = buffer;
+                return;
+            }
+            if (slots[i].length < slots[smallest].length) {
+                smallest = i;
+            }
+        }
+        if (slots[smallest].length < buffer.length) {
+            slots[smallest] = buffer;
+        }
+    }
+
+    /**
+     * @return the number of requests served from the pool since the last {@link #resetStatistics()}
+     */
+    public static long getHitCount() {
+        return HITS.sum();
+    }
+
+    /**
+     * @return the number of poolable requests which had to allocate a new array since the last
+     *         {@link #resetStatistics()}
+     */
+    public static long getMissCount() {
+        return MISSES.sum();
+    }
+
+    /**
+     * @return the share of poolable requests served from the pool, between {@code 0} and {@code 1}
+     */
+    public static double getHitRate() {
+        long hits = HITS.sum();
+        long total = hits + MISSES.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Reset the hit and miss counters.
+     */
+    public static void resetStatistics() {
+        HITS.reset();
+        MISSES.reset();
+    }
+}
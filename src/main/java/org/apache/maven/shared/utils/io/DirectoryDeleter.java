@@ -0,0 +1,440 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.shared.utils.cli.ShutdownHookUtils;
+
+/**
+ * Deletes the content of a directory tree.
+ * <p>
+ * The tree is walked once with {@link Files#walkFileTree(Path, java.nio.file.FileVisitor)}, the files of each
+ * directory are deleted in parallel batches and every directory is removed as soon as all of its children are gone,
+ * i.e. bottom-up. Symbolic links are deleted, never followed. All failures are collected and reported as a single
+ * {@link IOException} once the walk has finished.
+ * </p>
+ *
+ * @see FileUtils#cleanDirectory(java.io.File)
+ */
+final class DirectoryDeleter extends SimpleFileVisitor<Path> {
+    /**
+     * The number of files of a single directory deleted by one task.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Marks the hidden sibling a directory is renamed to before it is deleted in the background.
+     */
+    private static final String TOMBSTONE_INFIX = ".deleted-";
+
+    /**
+     * Whether failed deletions are retried, on Windows only, where files still open elsewhere or deleted just before
+     * linger for a moment. Elsewhere a failure is permanent and retrying would only slow down the deletion.
+     */
+    private static final boolean RETRY_DELETE = File.separatorChar == '\\';
+
+    private final Path root;
+
+    private final boolean deleteRoot;
+
+    private final Deque<Node> stack = new ArrayDeque<>();
+
+    private final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private List<Path> batch = new ArrayList<>(BATCH_SIZE);
+
+    private boolean started;
+
+    private DirectoryDeleter(Path root, boolean deleteRoot) {
+        this.root = root;
+        this.deleteRoot = deleteRoot;
+    }
+
+    /**
+     * Deletes all files and directories below {@code directory}.
+     *
+     * @param directory the directory to clean
+     * @param deleteRoot {@code true} to delete {@code directory} itself as well
+     * @throws IOException if any file or directory could not be deleted, all failures are attached as suppressed
+     *         exceptions
+     */
+    static void delete(@Nonnull Path directory, boolean deleteRoot) throws IOException {
+        Path start = directory;
+        if (Files.isSymbolicLink(start)) {
+            // clean the target of the link, as File.listFiles() used to do
+            start = start.toRealPath();
+        }
+
+        DirectoryDeleter deleter = new DirectoryDeleter(start, deleteRoot);
+        Files.walkFileTree(start, deleter);
+        if (!deleter.started) {
+            // the root itself could not be opened
+            deleter.done.countDown();
+        }
+        deleter.await();
+
+        if (!deleter.failures.isEmpty()) {
+            IOException exception = new IOException("Failed to delete " + deleter.failures.size()
+                    + " file(s) or directories in " + directory + ", first failure: "
+                    + deleter.failures.peek());
+            for (IOException failure : deleter.failures) {
+                exception.addSuppressed(failure);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Renames {@code directory} to a hidden sibling and deletes the renamed tree in the background. Leftovers of
+     * earlier background deletions of the same directory, e.g. interrupted by a crash, are deleted as well.
+     * If the directory can't be renamed atomically it is deleted synchronously.
+     *
+     * @param directory the directory to delete
+     * @return a future completed once the renamed tree is gone
+     * @throws IOException if the directory has to be deleted synchronously and that fails
+     */
+    @Nonnull
+    static CompletableFuture<Void> deleteInBackground(@Nonnull Path directory) throws IOException {
+        Path parent = directory.toAbsolutePath().getParent();
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (Files.isSymbolicLink(directory) || !Files.isDirectory(directory)) {
+            // only the link or file itself, as FileUtils.deleteDirectory(File) does
+            Files.delete(directory);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (parent == null) {
+            delete(directory, true);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String prefix = "." + directory.getFileName() + TOMBSTONE_INFIX;
+        Path tombstone = parent.resolve(prefix + Long.toHexString(System.nanoTime()));
+        try {
+            Files.move(directory, tombstone, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // e.g. AtomicMoveNotSupportedException or a file still in use on Windows
+            delete(directory, true);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<Path> tombstones = new ArrayList<>();
+        tombstones.add(tombstone);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(
+                parent, path -> path.getFileName().toString().startsWith(prefix) && !path.equals(tombstone))) {
+            for (Path path : stale) {
+                tombstones.add(path);
+            }
+        } catch (IOException e) {
+            // only the leftovers are not collected
+        }
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        Background.add(future);
+        future.whenComplete((result, failure) -> Background.remove(future));
+        Background.INSTANCE.execute(() -> {
+            try {
+                for (Path path : tombstones) {
+                    delete(path, true);
+                }
+                future.complete(null);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Waits for all deletions started by {@link #deleteInBackground(Path)} to finish.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of {@code timeout}
+     * @return {@code true} if no deletion is pending anymore
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static boolean awaitBackgroundDeletions(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2);
+        for (CompletableFuture<Void> future : Background.PENDING) {
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                // reported through the future returned to the caller
+            } catch (TimeoutException e) {
+                return false;
+            }
+        }
+        return Background.PENDING.isEmpty();
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        flush();
+        started = true;
+        stack.push(new Node(dir, stack.peek()));
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        batch.add(file);
+        if (batch.size() == BATCH_SIZE) {
+            flush();
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        if (!(exc instanceof NoSuchFileException)) {
+            failures.add(exc);
+            Node current = stack.peek();
+            if (current != null) {
+                current.failed = true;
+            }
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+        flush();
+        Node node = stack.pop();
+        if (exc != null) {
+            failures.add(exc);
+            node.failed = true;
+        }
+        // release the token held by the walk itself
+        node.release();
+        return FileVisitResult.CONTINUE;
+    }
+
+    private void await() throws IOException {
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deleting " + root, e);
+        }
+    }
+
+    /**
+     * Hands the files collected so far for the current directory over to the executor.
+     */
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final List<Path> files = batch;
+        final Node node = stack.peek();
+        batch = new ArrayList<>(BATCH_SIZE);
+
+        node.pending.incrementAndGet();
+        Runnable task = () -> {
+            try {
+                for (Path file : files) {
+                    if (!deleteQuietly(file)) {
+                        node.failed = true;
+                    }
+                }
+            } finally {
+                node.release();
+            }
+        };
+
+        try {
+            Pool.INSTANCE.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * Deletes a single file or directory. On Windows a failed deletion is retried once after a short pause, as
+     * handles are released lazily there.
+     *
+     * @return {@code true} if the path is gone
+     */
+    private boolean deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            if (!RETRY_DELETE) {
+                failures.add(e);
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+                Files.deleteIfExists(path);
+                return true;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                failures.add(e);
+            } catch (IOException e2) {
+                failures.add(e2);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A directory of the tree, deleted once the walk has left it and all deletions below it have completed.
+     */
+    private final class Node {
+        private final Path dir;
+
+        private final Node parent;
+
+        /**
+         * Outstanding work: one token for the walk itself, one per submitted batch and one per sub directory.
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private volatile boolean failed;
+
+        Node(Path dir, @Nullable Node parent) {
+            this.dir = dir;
+            this.parent = parent;
+            if (parent != null) {
+                parent.pending.incrementAndGet();
+            }
+        }
+
+        void release() {
+            if (pending.decrementAndGet() != 0) {
+                return;
+            }
+
+            if (parent == null) {
+                if (deleteRoot && !failed) {
+                    deleteQuietly(dir);
+                }
+                done.countDown();
+                return;
+            }
+
+            // a directory with undeletable content can't be deleted either, don't report it twice
+            if (failed || !deleteQuietly(dir)) {
+                parent.failed = true;
+            }
+            parent.release();
+        }
+    }
+
+    private static ExecutorService newPool(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Lazily created pool shared by all deletions, its threads terminate when idle.
+     */
+    private static final class Pool {
+        static final ExecutorService INSTANCE =
+                newPool("DirectoryDeleter", Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Lazily created executor running the deletions of renamed directories one after the other. A shutdown hook
+     * draining the pending deletions is registered only while there are any, so that an idle class loader is not
+     * pinned by it.
+     */
+    private static final class Background {
+        static final ExecutorService INSTANCE = newPool("DirectoryDeleter-background", 1);
+
+        static final Set<CompletableFuture<Void>> PENDING = ConcurrentHashMap.newKeySet();
+
+        private static final Object LOCK = new Object();
+
+        private static Thread hook;
+
+        static void add(CompletableFuture<Void> future) {
+            synchronized (LOCK) {
+                if (PENDING.add(future) && hook == null) {
+                    hook = new Thread(() -> {
+                        try {
+                            awaitBackgroundDeletions(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                    hook.setName("DirectoryDeleter shutdown hook");
+                    hook.setContextClassLoader(null);
+                    ShutdownHookUtils.addShutDownHook(hook);
+                }
+            }
+        }
+
+        static void remove(CompletableFuture<Void> future) {
+            synchronized (LOCK) {
+                if (PENDING.remove(future) && PENDING.isEmpty() && hook != null) {
+                    // fails silently while the JVM is already shutting down
+                    ShutdownHookUtils.removeShutdownHook(hook);
+                    hook = null;
+                }
+            }
+        }
+    }
+}
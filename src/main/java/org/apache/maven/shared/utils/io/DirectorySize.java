@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The size of a directory tree as computed by {@link DirectorySizeCalculator}.
+ *
+ * @since 3.5.0
+ */
+public class DirectorySize {
+    private final long fileCount;
+
+    private final long directoryCount;
+
+    private final long totalBytes;
+
+    private final Map<Path, Long> largestFiles;
+
+    private final List<Path> unreadablePaths;
+
+    /**
+     * @param fileCount the number of files
+     * @param directoryCount the number of sub directories
+     * @param totalBytes the summed size of all regular files
+     * @param largestFiles the largest files with their size, largest first
+     * @param unreadablePaths the directories and files which could not be read
+     */
+    public DirectorySize(
+            long fileCount,
+            long directoryCount,
+            long totalBytes,
+            @Nonnull Map<Path, Long> largestFiles,
+            @Nonnull List<Path> unreadablePaths) {
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.totalBytes = totalBytes;
+        this.largestFiles = Collections.unmodifiableMap(largestFiles);
+        this.unreadablePaths = Collections.unmodifiableList(unreadablePaths);
+    }
+
+    /**
+     * @return the number of files, including symbolic links which were not followed
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return the number of directories below the base directory
+     */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * @return the summed size of all regular files in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the largest files mapped to their size, iterated largest first
+     */
+    @Nonnull
+    public Map<Path, Long> getLargestFiles() {
+        return largestFiles;
+    }
+
+    /**
+     * @return the directories and files which could not be read and are therefore not included in the totals
+     */
+    @Nonnull
+    public List<Path> getUnreadablePaths() {
+        return unreadablePaths;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectorySize{files=" + fileCount + ", directories=" + directoryCount + ", bytes=" + totalBytes
+                + ", unreadable=" + unreadablePaths.size() + "}";
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the size of a directory tree.
+ * <p>
+ * The attributes of every file are read only once. Sub directories can be summed up in parallel, files reachable
+ * through several hard links can be counted only once and the largest files are collected on the way.
+ * Directories which can't be read don't abort the calculation, they are reported by
+ * {@link DirectorySize#getUnreadablePaths()}.
+ * </p>
+ * <pre>
+ * DirectorySizeCalculator calculator = new DirectorySizeCalculator( repository );
+ * calculator.setParallel( true );
+ * calculator.setLargestFilesCount( 10 );
+ * DirectorySize size = calculator.calculate();
+ * </pre>
+ *
+ * @since 3.5.0
+ */
+public class DirectorySizeCalculator {
+    private static final Comparator<Map.Entry<Path, Long>> BY_SIZE = Map.Entry.comparingByValue();
+
+    private final Path basedir;
+
+    private boolean parallel;
+
+    private boolean deduplicateHardLinks;
+
+    private boolean followSymlinks;
+
+    private int largestFilesCount;
+
+    /**
+     * @param basedir the directory to compute the size of
+     */
+    public DirectorySizeCalculator(@Nonnull File basedir) {
+        this(basedir.toPath());
+    }
+
+    /**
+     * @param basedir the directory to compute the size of
+     */
+    public DirectorySizeCalculator(@Nonnull Path basedir) {
+        this.basedir = basedir;
+    }
+
+    /**
+     * Sum up sub directories in parallel on the common fork join pool. Defaults to {@code false}.
+     *
+     * @param parallel whether to compute the size in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Count files and directories reachable through several hard links, or followed symbolic links, only once.
+     * This relies on {@link BasicFileAttributes#fileKey()} and has no effect on file systems not providing one.
+     * Defaults to {@code false}.
+     *
+     * @param deduplicateHardLinks whether to count each file only once
+     */
+    public void setDeduplicateHardLinks(boolean deduplicateHardLinks) {
+        this.deduplicateHardLinks = deduplicateHardLinks;
+    }
+
+    /**
+     * Follow symbolic links to files and directories. Links forming a cycle are skipped. Defaults to {@code false},
+     * i.e. links are counted as files without size.
+     *
+     * @param followSymlinks whether to follow symbolic links
+     */
+    public void setFollowSymlinks(boolean followSymlinks) {
+        this.followSymlinks = followSymlinks;
+    }
+
+    /**
+     * Defaults to {@code 0}.
+     *
+     * @param largestFilesCount the number of largest files to report
+     */
+    public void setLargestFilesCount(int largestFilesCount) {
+        this.largestFilesCount = largestFilesCount;
+    }
+
+    /**
+     * Compute the size of the directory tree.
+     *
+     * @return the size of the directory tree
+     * @throws IOException if the base directory doesn't exist or isn't a directory
+     */
+    @Nonnull
+    public DirectorySize calculate() throws IOException {
+        if (!Files.isDirectory(basedir)) {
+            if (Files.exists(basedir)) {
+                throw new NotDirectoryException(basedir.toString());
+            }
+            throw new NoSuchFileException(basedir.toString());
+        }
+
+        Set<Object> seen = deduplicateHardLinks ? ConcurrentHashMap.newKeySet() : null;
+        Tally tally;
+        if (parallel) {
+            tally = ForkJoinPool.commonPool().invoke(new SizeTask(basedir, null, seen));
+        } else {
+            tally = new Tally(largestFilesCount);
+            walk(tally, seen);
+        }
+        return tally.toDirectorySize();
+    }
+
+    private void walk(final Tally tally, @Nullable final Set<Object> seen) throws IOException {
+        Set<FileVisitOption> options =
+                followSymlinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+        Files.walkFileTree(basedir, options, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (seen != null && attrs.fileKey() != null && !seen.add(attrs.fileKey())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!dir.equals(basedir)) {
+                    tally.directories++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                tally.addFile(file, attrs, seen);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                if (!(exc instanceof FileSystemLoopException || exc instanceof NoSuchFileException)) {
+                    tally.unreadable.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                if (exc != null) {
+                    tally.unreadable.add(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * The counts of one directory and, once joined, of all its sub directories.
+     */
+    private static final class Tally {
+        private final int largestFilesCount;
+
+        private final PriorityQueue<Map.Entry<Path, Long>> largest;
+
+        private final List<Path> unreadable = new ArrayList<>();
+
+        private long files;
+
+        private long directories;
+
+        private long bytes;
+
+        Tally(int largestFilesCount) {
+            this.largestFilesCount = largestFilesCount;
+            this.largest = new PriorityQueue<>(Math.max(1, largestFilesCount + 1), BY_SIZE);
+        }
+
+        void addFile(Path file, BasicFileAttributes attrs, @Nullable Set<Object> seen) {
+            if (seen != null && attrs.fileKey() != null && !seen.add(attrs.fileKey())) {
+                return;
+            }
+            files++;
+            if (attrs.isRegularFile()) {
+                long size = attrs.size();
+                bytes += size;
+                if (largestFilesCount > 0) {
+                    offer(new AbstractMap.SimpleImmutableEntry<>(file, size));
+                }
+            }
+        }
+
+        private void offer(Map.Entry<Path, Long> entry) {
+            if (largest.size() < largestFilesCount) {
+                largest.add(entry);
+            } else if (entry.getValue() > largest.peek().getValue()) {
+                largest.poll();
+                largest.add(entry);
+            }
+        }
+
+        void merge(Tally other) {
+            files += other.files;
+            directories += other.directories;
+            bytes += other.bytes;
+            unreadable.addAll(other.unreadable);
+            for (Map.Entry<Path, Long> entry : other.largest) {
+                offer(entry);
+            }
+        }
+
+        DirectorySize toDirectorySize() {
+            List<Map.Entry<Path, Long>> sorted = new ArrayList<>(largest);
+            sorted.sort(Collections.reverseOrder(BY_SIZE));
+            Map<Path, Long> largestFiles = new LinkedHashMap<>();
+            for (Map.Entry<Path, Long> entry : sorted) {
+                largestFiles.put(entry.getKey(), entry.getValue());
+            }
+            return new DirectorySize(files, directories, bytes, largestFiles, unreadable);
+        }
+    }
+
+    /**
+     * Sums up one directory and forks a task for each of its sub directories.
+     */
+    private final class SizeTask extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        private final Ancestor ancestor;
+
+        private final Set<Object> seen;
+
+        SizeTask(Path dir, @Nullable Ancestor ancestor, @Nullable Set<Object> seen) {
+            this.dir = dir;
+            this.ancestor = ancestor;
+            this.seen = seen;
+        }
+
+        @Override
+        protected Tally compute() {
+            Tally tally = new Tally(largestFilesCount);
+            Ancestor self = followSymlinks ? new Ancestor(dir, ancestor) : null;
+            List<SizeTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs = readAttributes(entry, tally);
+                    if (attrs == null) {
+                        continue;
+                    }
+                    if (!attrs.isDirectory()) {
+                        tally.addFile(entry, attrs, seen);
+                    } else if ((seen == null || attrs.fileKey() == null || seen.add(attrs.fileKey()))
+                            && (self == null || !self.isLoop(entry))) {
+                        tally.directories++;
+                        SizeTask subtask = new SizeTask(entry, self, seen);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                tally.unreadable.add(dir);
+            }
+            for (SizeTask subtask : subtasks) {
+                tally.merge(subtask.join());
+            }
+            return tally;
+        }
+
+        @Nullable
+        private BasicFileAttributes readAttributes(Path entry, Tally tally) {
+            try {
+                if (followSymlinks) {
+                    try {
+                        return Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (NoSuchFileException e) {
+                        // a broken link is visited as the link itself, just like Files.walkFileTree does
+                    }
+                }
+                return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                tally.unreadable.add(entry);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The chain of directories from the base directory down to the one visited, used to detect cycles formed by
+     * symbolic links.
+     */
+    private static final class Ancestor {
+        private final Path dir;
+
+        private final Ancestor parent;
+
+        Ancestor(Path dir, @Nullable Ancestor parent) {
+            this.dir = dir;
+            this.parent = parent;
+        }
+
+        boolean isLoop(Path entry) {
+            if (!Files.isSymbolicLink(entry)) {
+                return false;
+            }
+            for (Ancestor a = this; a != null; a = a.parent) {
+                try {
+                    if (Files.isSameFile(a.dir, entry)) {
+                        return true;
+                    }
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the content of files.
+ * <p>
+ * Files of different size are never read, neither are two paths denoting the same file. Everything else is compared
+ * chunk by chunk with {@link ByteBuffer#equals(Object)}, which the JDK vectorizes since Java 11. Large files are
+ * memory-mapped, except on Windows where mapped files can't be deleted until the mapping is garbage collected.
+ * </p>
+ *
+ * @see FileUtils#contentEquals(java.io.File, java.io.File)
+ */
+final class FileComparator {
+    /**
+     * Files up to this size (1 MB) are read in blocks rather than mapped.
+     */
+    private static final long MAPPED_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The size of the regions mapped at once (64 MB).
+     */
+    private static final long MAPPED_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The size of the blocks read at once (64 KB).
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final boolean MAP_FILES = File.separatorChar != '\\';
+
+    private FileComparator() {}
+
+    /**
+     * Compares the content of two regular files.
+     *
+     * @param file1 the first file
+     * @param file2 the second file
+     * @return {@code true} if both files have the same content
+     * @throws IOException if a file can't be read
+     */
+    static boolean contentEquals(@Nonnull Path file1, @Nonnull Path file2) throws IOException {
+        BasicFileAttributes attributes1 = Files.readAttributes(file1, BasicFileAttributes.class);
+        BasicFileAttributes attributes2 = Files.readAttributes(file2, BasicFileAttributes.class);
+        if (attributes1.size() != attributes2.size()) {
+            return false;
+        }
+        if (attributes1.fileKey() != null && attributes1.fileKey().equals(attributes2.fileKey())) {
+            return true;
+        }
+
+        try (FileChannel channel1 = FileChannel.open(file1, StandardOpenOption.READ);
+                FileChannel channel2 = FileChannel.open(file2, StandardOpenOption.READ)) {
+            long size = channel1.size();
+            if (size != channel2.size()) {
+                return false;
+            }
+            if (MAP_FILES && size > MAPPED_THRESHOLD) {
+                return mappedEquals(channel1, channel2, size);
+            }
+            return blockEquals(channel1, channel2);
+        }
+    }
+
+    private static boolean mappedEquals(FileChannel channel1, FileChannel channel2, long size) throws IOException {
+        for (long position = 0; position < size; position += MAPPED_CHUNK_SIZE) {
+            long length = Math.min(MAPPED_CHUNK_SIZE, size - position);
+            ByteBuffer chunk1 = channel1.map(FileChannel.MapMode.READ_ONLY, position, length);
+            ByteBuffer chunk2 = channel2.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (!chunk1.equals(chunk2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean blockEquals(FileChannel channel1, FileChannel channel2) throws IOException {
+        byte[] array1 = BufferPool.takeBytes(BLOCK_SIZE);
+        byte[] array2 = BufferPool.takeBytes(BLOCK_SIZE);
+        try {
+            ByteBuffer block1 = ByteBuffer.wrap(array1, 0, BLOCK_SIZE).slice();
+            ByteBuffer block2 = ByteBuffer.wrap(array2, 0, BLOCK_SIZE).slice();
+            while (true) {
+                int read1 = readBlock(channel1, block1);
+                int read2 = readBlock(channel2, block2);
+                if (read1 != read2 || !block1.equals(block2)) {
+                    return false;
+                }
+                if (read1 < BLOCK_SIZE) {
+                    return true;
+                }
+            }
+        } finally {
+            BufferPool.release(array1);
+            BufferPool.release(array2);
+        }
+    }
+
+    /**
+     * Fills the block as far as possible and flips it.
+     */
+    private static int readBlock(FileChannel channel, ByteBuffer block) throws IOException {
+        ((Buffer) block).clear();
+        while (block.hasRemaining() && channel.read(block) >= 0) {
+            // keep reading until the block is full or the end of the file is reached
+        }
+        ((Buffer) block).flip();
+        return block.limit();
+    }
+
+    /**
+     * Compares two directory trees. Files present in both trees are compared in parallel.
+     *
+     * @param directory1 the first directory
+     * @param directory2 the second directory
+     * @return the sorted relative paths, separated by {@code '/'}, of the files which differ or exist in one tree only
+     * @throws IOException if a tree can't be walked or a file can't be read
+     */
+    @Nonnull
+    static List<String> differences(@Nonnull Path directory1, @Nonnull Path directory2) throws IOException {
+        Map<String, Boolean> tree1 = list(directory1);
+        Map<String, Boolean> tree2 = list(directory2);
+
+        List<String> differences = new ArrayList<>();
+        List<String> common = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : tree1.entrySet()) {
+            Boolean isDirectory = tree2.get(entry.getKey());
+            if (!Objects.equals(isDirectory, entry.getValue())) {
+                differences.add(entry.getKey());
+            } else if (!isDirectory) {
+                common.add(entry.getKey());
+            }
+        }
+        for (String path : tree2.keySet()) {
+            if (!tree1.containsKey(path)) {
+                differences.add(path);
+            }
+        }
+
+        try {
+            differences.addAll(common.parallelStream()
+                    .filter(path -> {
+                        try {
+                            return !contentEquals(directory1.resolve(path), directory2.resolve(path));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Collections.sort(differences);
+        return differences;
+    }
+
+    /**
+     * @return the relative paths of all entries below {@code directory} mapped to whether they are a directory
+     */
+    private static Map<String, Boolean> list(final Path directory) throws IOException {
+        final Map<String, Boolean> entries = new TreeMap<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(directory)) {
+                    entries.put(relativize(dir), true);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // a symbolic link to a directory is not followed but must not be compared as a file either
+                entries.put(relativize(file), attrs.isSymbolicLink() && Files.isDirectory(file));
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String relativize(Path path) {
+                return directory.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+            }
+        });
+        return entries;
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Collects many file operations and executes them as a whole.
+ * <p>
+ * Instead of checking and creating parent directories for every single file, the plan creates each directory once,
+ * validates all operations against each other before touching the file system and runs them in parallel. A plan
+ * is executed in phases: deletions first, then directory creations, then copies and moves.
+ * </p>
+ * <pre>
+ * FileOperationPlan plan = new FileOperationPlan();
+ * plan.delete( outputDirectory );
+ * for ( File resource : resources )
+ * {
+ *     plan.copy( resource, new File( outputDirectory, relativePath( resource ) ) );
+ * }
+ * FileOperationPlan.Report report = plan.execute();
+ * </pre>
+ *
+ * @since 3.5.0
+ */
+public class FileOperationPlan {
+    private static final Comparator<Transfer> BY_TARGET =
+            Comparator.comparing((Transfer transfer) -> transfer.target).thenComparing(transfer -> transfer.source);
+
+    private final List<Path> deletions = new ArrayList<>();
+
+    private final List<Path> directories = new ArrayList<>();
+
+    private final List<Transfer> transfers = new ArrayList<>();
+
+    private boolean parallel = true;
+
+    /**
+     * Run the operations of each phase in parallel on the common fork join pool. Defaults to {@code true}. When run
+     * sequentially, the operations of each phase are executed sorted by path.
+     *
+     * @param parallel whether to run operations in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Plan to copy a file. An existing destination is replaced, missing parent directories are created. A symbolic
+     * link is copied as a link. Copying a file onto itself does nothing.
+     *
+     * @param source      the file to copy
+     * @param destination the file to copy to
+     * @return this plan
+     */
+    @Nonnull
+    public FileOperationPlan copy(@Nonnull File source, @Nonnull File destination) {
+        transfers.add(new Transfer(false, normalize(source), normalize(destination)));
+        return this;
+    }
+
+    /**
+     * Plan to move a file or directory. An existing destination file is replaced, missing parent directories are
+     * created.
+     *
+     * @param source      the file to move
+     * @param destination the new path of the file
+     * @return this plan
+     */
+    @Nonnull
+    public FileOperationPlan move(@Nonnull File source, @Nonnull File destination) {
+        transfers.add(new Transfer(true, normalize(source), normalize(destination)));
+        return this;
+    }
+
+    /**
+     * Plan to delete a file, or a directory with all its content. Deletions run before any other operation.
+     *
+     * @param file the file or directory to delete
+     * @return this plan
+     */
+    @Nonnull
+    public FileOperationPlan delete(@Nonnull File file) {
+        deletions.add(normalize(file));
+        return this;
+    }
+
+    /**
+     * Plan to create a directory and its missing parents.
+     *
+     * @param directory the directory to create
+     * @return this plan
+     */
+    @Nonnull
+    public FileOperationPlan mkdir(@Nonnull File directory) {
+        directories.add(normalize(directory));
+        return this;
+    }
+
+    /**
+     * Execute all planned operations. The plan is left unchanged and can be executed again.
+     *
+     * @return the outcome of all operations
+     * @throws IOException if operations conflict with each other, in which case nothing has been executed
+     */
+    @Nonnull
+    public Report execute() throws IOException {
+        List<Transfer> planned = new ArrayList<>();
+        for (Transfer transfer : transfers) {
+            if (!transfer.source.equals(transfer.target)) {
+                planned.add(transfer);
+            }
+        }
+        checkConflicts(planned);
+
+        final Report report = new Report();
+
+        List<Path> toDelete = outermost(deletions);
+        run("delete ", toDelete.stream(), path -> {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                DirectoryDeleter.delete(path, true);
+            } else {
+                Files.deleteIfExists(path);
+            }
+            report.deleted.incrementAndGet();
+        }, report);
+
+        Set<Path> wanted = new HashSet<>(directories);
+        for (Transfer transfer : planned) {
+            if (transfer.target.getParent() != null) {
+                wanted.add(transfer.target.getParent());
+            }
+        }
+        run("mkdir ", innermost(wanted).stream(), path -> {
+            Files.createDirectories(path);
+            report.directories.incrementAndGet();
+        }, report);
+
+        planned.sort(BY_TARGET);
+        run("", planned.stream(), transfer -> {
+            if (transfer.move) {
+                Files.move(transfer.source, transfer.target, StandardCopyOption.REPLACE_EXISTING);
+                report.moved.incrementAndGet();
+            } else {
+                Files.copy(
+                        transfer.source,
+                        transfer.target,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        LinkOption.NOFOLLOW_LINKS);
+                report.copied.incrementAndGet();
+            }
+        }, report);
+
+        return report;
+    }
+
+    /**
+     * Two operations conflict when their paths are the same or one is inside the other, e.g. a copy reading from a
+     * directory another transfer moves away.
+     */
+    private void checkConflicts(List<Transfer> planned) throws IOException {
+        List<String> conflicts = new ArrayList<>();
+        Map<Path, List<Integer>> byTarget = new HashMap<>();
+        Map<Path, List<Integer>> bySource = new HashMap<>();
+        for (int i = 0; i < planned.size(); i++) {
+            byTarget.computeIfAbsent(planned.get(i).target, path -> new ArrayList<>()).add(i);
+            bySource.computeIfAbsent(planned.get(i).source, path -> new ArrayList<>()).add(i);
+        }
+        // every pair is found from its inner path, pairs of equal paths from their later transfer only
+        for (int i = 0; i < planned.size(); i++) {
+            Transfer transfer = planned.get(i);
+            for (int j : enclosing(byTarget, transfer.target, i, i)) {
+                Transfer other = planned.get(j);
+                conflicts.add(other.target.equals(transfer.target)
+                        ? other + " and " + transfer + " write the same file"
+                        : transfer + " writes into the target of " + other);
+            }
+            for (int j : enclosing(bySource, transfer.source, i, i)) {
+                Transfer other = planned.get(j);
+                if (other.move || transfer.move) {
+                    conflicts.add(other + " and " + transfer + " both need " + transfer.source);
+                }
+            }
+            for (int j : enclosing(bySource, transfer.target, i, planned.size())) {
+                conflicts.add(transfer + " overwrites the source of " + planned.get(j));
+            }
+            for (int j : enclosing(byTarget, transfer.source, i, -1)) {
+                conflicts.add(planned.get(j) + " overwrites the source of " + transfer);
+            }
+        }
+        for (Path directory : directories) {
+            for (int j : enclosing(byTarget, directory, -1, planned.size())) {
+                conflicts.add("mkdir " + directory + " and " + planned.get(j) + " create the same path");
+            }
+        }
+        Set<Path> deleted = new HashSet<>(deletions);
+        for (Transfer transfer : planned) {
+            for (Path path = transfer.source; path != null; path = path.getParent()) {
+                if (deleted.contains(path)) {
+                    conflicts.add("delete " + path + " removes the source of " + transfer);
+                }
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            StringBuilder message = new StringBuilder("Conflicting file operations:");
+            for (String conflict : conflicts) {
+                message.append(System.lineSeparator()).append("  ").append(conflict);
+            }
+            throw new IOException(message.toString());
+        }
+    }
+
+    /**
+     * @return the indexes of the transfers whose path in {@code index} is an ancestor of {@code path}, or equal to it
+     *         and below {@code before}, except for {@code self}
+     */
+    private static List<Integer> enclosing(Map<Path, List<Integer>> index, Path path, int self, int before) {
+        List<Integer> result = new ArrayList<>();
+        for (int i : index.getOrDefault(path, Collections.emptyList())) {
+            if (i != self && i < before) {
+                result.add(i);
+            }
+        }
+        for (Path ancestor = path.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            for (int i : index.getOrDefault(ancestor, Collections.emptyList())) {
+                if (i != self) {
+                    result.add(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    private <T> void run(String verb, Stream<T> operations, Operation<T> operation, final Report report) {
+        (parallel ? operations.parallel() : operations).forEach(item -> {
+            try {
+                operation.run(item);
+            } catch (IOException e) {
+                report.failures.put(verb + item, e);
+            }
+        });
+    }
+
+    /**
+     * @return the sorted paths of which no ancestor is part of {@code paths} as well
+     */
+    private static List<Path> outermost(Collection<Path> paths) {
+        Set<Path> unique = new TreeSet<>(paths);
+        List<Path> result = new ArrayList<>();
+        for (Path path : unique) {
+            Path ancestor = path.getParent();
+            while (ancestor != null && !unique.contains(ancestor)) {
+                ancestor = ancestor.getParent();
+            }
+            if (ancestor == null) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the sorted paths which are no ancestor of another path of {@code paths}, as creating those creates
+     *         their ancestors as well
+     */
+    private static List<Path> innermost(Collection<Path> paths) {
+        List<Path> sorted = new ArrayList<>(new TreeSet<>(paths));
+        Set<Path> ancestors = new HashSet<>();
+        for (Path path : sorted) {
+            for (Path parent = path.getParent(); parent != null && ancestors.add(parent); parent = parent.getParent()) {
+                // every ancestor is recorded once
+            }
+        }
+        List<Path> result = new ArrayList<>();
+        for (Path path : sorted) {
+            if (!ancestors.contains(path)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    private static Path normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    private interface Operation<T> {
+        void run(T item) throws IOException;
+    }
+
+    private static final class Transfer {
+        private final boolean move;
+
+        private final Path source;
+
+        private final Path target;
+
+        Transfer(boolean move, Path source, Path target) {
+            this.move = move;
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public String toString() {
+            return (move ? "move " : "copy ") + source + " to " + target;
+        }
+    }
+
+    /**
+     * The outcome of executing a {@link FileOperationPlan}.
+     */
+    public static class Report {
+        private final AtomicInteger deleted = new AtomicInteger();
+
+        private final AtomicInteger directories = new AtomicInteger();
+
+        private final AtomicInteger copied = new AtomicInteger();
+
+        private final AtomicInteger moved = new AtomicInteger();
+
+        private final Map<String, IOException> failures = new ConcurrentHashMap<>();
+
+        /**
+         * @return the number of files and directory trees deleted
+         */
+        public int getDeletedCount() {
+            return deleted.get();
+        }
+
+        /**
+         * @return the number of {@link Files#createDirectories} calls, each of which may have created several
+         *         directories or none
+         */
+        public int getDirectoryCount() {
+            return directories.get();
+        }
+
+        /**
+         * @return the number of files copied
+         */
+        public int getCopiedCount() {
+            return copied.get();
+        }
+
+        /**
+         * @return the number of files moved
+         */
+        public int getMovedCount() {
+            return moved.get();
+        }
+
+        /**
+         * @return the failed operations, sorted by their description, mapped to their failure
+         */
+        @Nonnull
+        public Map<String, IOException> getFailures() {
+            Map<String, IOException> sorted = new LinkedHashMap<>();
+            List<String> operations = new ArrayList<>(failures.keySet());
+            Collections.sort(operations);
+            for (String operation : operations) {
+                sorted.put(operation, failures.get(operation));
+            }
+            return sorted;
+        }
+
+        /**
+         * @return {@code true} if all operations succeeded
+         */
+        public boolean isSuccessful() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * @throws IOException the first failure, with all other failures attached as suppressed exceptions
+         */
+        public void rethrowFailures() throws IOException {
+            IOException first = null;
+            for (Map.Entry<String, IOException> failure : getFailures().entrySet()) {
+                if (first == null) {
+                    first = new IOException(
+                            failures.size() + " file operation(s) failed, first: " + failure.getKey(),
+                            failure.getValue());
+                } else {
+                    first.addSuppressed(failure.getValue());
+                }
+            }
+            if (first != null) {
+                throw first;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "deleted " + deleted + ", created " + directories + " directories, copied " + copied + ", moved "
+                    + moved + ", " + failures.size() + " failure(s)";
+        }
+    }
+}
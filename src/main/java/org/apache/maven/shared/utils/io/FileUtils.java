@@ -20,7 +20,6 @@ package org.apache.maven.shared.utils.io;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.WillClose;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -31,6 +30,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.net.URL;
 import java.nio.Buffer;
@@ -38,21 +38,42 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.SecureRandom;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.maven.shared.utils.Os;
 import org.apache.maven.shared.utils.StringUtils;
 
@@ -114,6 +135,26 @@ public class FileUtils {
      */
     private static final int FILE_COPY_BUFFER_SIZE = ONE_MB * 30;
 
+    /**
+     * The number of chars compared or written at once when copying with filters (8 K)
+     */
+    private static final int FILTERED_COPY_BUFFER_SIZE = ONE_KB * 8;
+
+    /**
+     * Files larger than this (1 MB) are decoded chunk by chunk instead of being read into a single byte array.
+     */
+    private static final int FILE_READ_CHUNKED_THRESHOLD = ONE_MB;
+
+    /**
+     * The size of the regions mapped at once when decoding large files (64 MB)
+     */
+    private static final int FILE_READ_MAPPED_CHUNK_SIZE = ONE_MB * 64;
+
+    /**
+     * The size of the direct buffer used to decode large files where mapping them isn't desirable (64 KB)
+     */
+    private static final int FILE_READ_BUFFER_SIZE = ONE_KB * 64;
+
     /**
      * The vm line separator
      */
@@ -278,20 +319,99 @@ public class FileUtils {
     @Deprecated
     @Nonnull
     public static String fileRead(@Nonnull File file, @Nullable String encoding) throws IOException {
-        Charset charset = charset(encoding);
+        return fileReadAsCharSequence(file, encoding).toString();
+    }
+
+    /**
+     * Read the content of a file without copying it into a {@link String}.
+     * <p>
+     * The destination is sized from the file length. Small files are read into a single byte array, larger ones are
+     * decoded straight from memory-mapped regions of the file (from a direct buffer on Windows, where mapped files
+     * can't be deleted until the mapping is garbage collected).
+     * </p>
+     *
+     * @param file     the file path
+     * @param encoding the wanted encoding, the platform encoding if {@code null} or empty
+     * @return the file content using the specified encoding, positioned at its start
+     * @throws IOException if the file can't be read or isn't valid in the given encoding
+     * @since 3.5.0
+     */
+    @Nonnull
+    public static CharBuffer fileReadAsCharSequence(@Nonnull File file, @Nullable String encoding)
+            throws IOException {
+        CharsetDecoder decoder = charset(encoding)
+                .newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= FILE_READ_CHUNKED_THRESHOLD) {
+                // the size of special files like those in /proc is unknown, so read on until the end of the file
+                ByteBuffer in = ByteBuffer.allocate((int) size + 1);
+                while (channel.read(in) >= 0) {
+                    if (!in.hasRemaining()) {
+                        ByteBuffer larger = ByteBuffer.allocate(Math.max(in.capacity() * 2, FILE_READ_BUFFER_SIZE));
+                        ((Buffer) in).flip();
+                        in = larger.put(in);
+                    }
+                }
+                ((Buffer) in).flip();
+                return decoder.decode(in);
+            }
 
-        StringBuilder buf = new StringBuilder();
+            long estimate = (long) (size * (double) decoder.averageCharsPerByte());
+            CharBuffer out = CharBuffer.allocate((int) Math.min(estimate + 16, Integer.MAX_VALUE - 8));
+            if (File.separatorChar == '\\') {
+                ByteBuffer in = ByteBuffer.allocateDirect(FILE_READ_BUFFER_SIZE);
+                while (channel.read(in) >= 0) {
+                    ((Buffer) in).flip();
+                    out = decode(decoder, in, out, false);
+                    in.compact();
+                }
+                ((Buffer) in).flip();
+                out = decode(decoder, in, out, true);
+            } else {
+                long position = 0;
+                do {
+                    long chunk = Math.min(FILE_READ_MAPPED_CHUNK_SIZE, size - position);
+                    ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, position, chunk);
+                    out = decode(decoder, in, out, position + chunk >= size);
+                    // an incomplete character at the end of the chunk is mapped again with the next one
+                    position += in.position();
+                } while (position < size);
+            }
+            while (decoder.flush(out).isOverflow()) {
+                out = grow(out);
+            }
+            ((Buffer) out).flip();
+            return out;
+        }
+    }
 
-        try (Reader reader = Files.newBufferedReader(file.toPath(), charset)) {
-            int count;
-            char[] b = new char[512];
-            while ((count = reader.read(b)) >= 0) // blocking read
-            {
-                buf.append(b, 0, count);
+    private static CharBuffer decode(CharsetDecoder decoder, ByteBuffer in, CharBuffer out, boolean endOfInput)
+            throws IOException {
+        while (true) {
+            CoderResult result = decoder.decode(in, out, endOfInput);
+            if (result.isUnderflow()) {
+                return out;
+            } else if (result.isOverflow()) {
+                out = grow(out);
+            } else {
+                result.throwException();
             }
         }
+    }
 
-        return buf.toString();
+    private static CharBuffer grow(CharBuffer buffer) throws IOException {
+        if (buffer.capacity() >= Integer.MAX_VALUE - 8) {
+            throw new IOException("File content exceeds the maximum size of a String");
+        }
+        int capacity = (int) Math.min(buffer.capacity() + (buffer.capacity() >> 1) + 16L, Integer.MAX_VALUE - 8);
+        CharBuffer grown = CharBuffer.allocate(capacity);
+        ((Buffer) buffer).flip();
+        grown.put(buffer);
+        return grown;
     }
 
     /**
@@ -434,6 +554,192 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Atomically replaces the content of a file. The file will be created if it does not exist.
+     * <p>
+     * The data is written to a hidden temporary file next to {@code file} which is then moved over it, so readers
+     * see either the old or the new content but never a partially written file. The permissions of an existing file
+     * are kept. If {@code file} is a symbolic link, the link itself is replaced.
+     * </p>
+     *
+     * @param file     the path of the file to write
+     * @param encoding the encoding of the file
+     * @param data     the content to write to the file
+     * @param sync     whether to force the content and the directory entry to the storage device before returning,
+     *                 so the new content survives a system crash
+     * @throws IOException if any, e.g. a {@link java.nio.charset.CharacterCodingException} if {@code data} can't be
+     *                     represented in the encoding. The original file is left untouched in that case.
+     * @since 3.5.0
+     */
+    public static void fileWriteAtomic(
+            @Nonnull File file, @Nullable String encoding, @Nonnull String data, boolean sync) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        writeAtomic(target, encode(charset(encoding), data), sync);
+        if (sync) {
+            syncDirectory(target.getParent());
+        }
+    }
+
+    /**
+     * Atomically replaces the content of several files, see {@link #fileWriteAtomic(File, String, String, boolean)}.
+     * <p>
+     * All files are written to temporary files first and only then moved into place one after the other. When
+     * {@code sync} is set, each temporary file is forced to the storage device once, after all of them have been
+     * written so the device can write them back together, and the directories containing them are synced only once,
+     * after all files have been moved. Forcing each file is kept, as its content wouldn't survive a crash otherwise.
+     * </p>
+     *
+     * @param files    the content to write mapped by the path of the file to write
+     * @param encoding the encoding of the files
+     * @param sync     whether all files should survive a system crash once this method returns
+     * @throws IOException if any. No file is replaced if writing or syncing fails, files moved into place before a
+     *                     failing move keep their new content.
+     * @since 3.5.0
+     */
+    public static void fileWriteAtomic(@Nonnull Map<File, String> files, @Nullable String encoding, boolean sync)
+            throws IOException {
+        Charset charset = charset(encoding);
+        Map<Path, Path> temps = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<File, String> entry : files.entrySet()) {
+                Path target = entry.getKey().toPath().toAbsolutePath();
+                Path temp = atomicTempFile(target);
+                temps.put(temp, target);
+                writeTemp(temp, encode(charset, entry.getValue()), false);
+            }
+            if (sync) {
+                for (Path temp : temps.keySet()) {
+                    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ)) {
+                        channel.force(true);
+                    }
+                }
+            }
+            Set<Path> directories = new LinkedHashSet<>();
+            for (Iterator<Map.Entry<Path, Path>> moves = temps.entrySet().iterator(); moves.hasNext(); ) {
+                Map.Entry<Path, Path> move = moves.next();
+                moveAtomic(move.getKey(), move.getValue());
+                moves.remove();
+                directories.add(move.getValue().getParent());
+            }
+            if (sync) {
+                for (Path directory : directories) {
+                    syncDirectory(directory);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Path temp : temps.keySet()) {
+                deleteTempFile(temp, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Unlike {@link String#getBytes(Charset)}, fails instead of silently replacing characters the charset can't
+     * represent.
+     */
+    static ByteBuffer encode(@Nonnull Charset charset, @Nonnull String data) throws IOException {
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .encode(CharBuffer.wrap(data));
+    }
+
+    private static void writeAtomic(@Nonnull Path target, @Nonnull ByteBuffer buffer, boolean sync)
+            throws IOException {
+        Path temp = atomicTempFile(target);
+        try {
+            writeTemp(temp, buffer, sync);
+            moveAtomic(temp, target);
+        } catch (IOException | RuntimeException e) {
+            deleteTempFile(temp, e);
+            throw e;
+        }
+    }
+
+    private static void writeTemp(@Nonnull Path temp, @Nonnull ByteBuffer buffer, boolean sync) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty hidden file in the directory of {@code target} to be moved over it by
+     * {@link #moveAtomic(Path, Path)} once written.
+     *
+     * @param target the file to be replaced
+     * @return the new temporary file
+     * @throws IOException if the file can't be created
+     */
+    @Nonnull
+    static Path atomicTempFile(@Nonnull Path target) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        String prefix = "." + absolute.getFileName() + ".";
+        while (true) {
+            String name = prefix + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp";
+            Path temp = absolute.resolveSibling(name);
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+
+    /**
+     * Moves a file written next to {@code target} over it, atomically if the file system supports it. The
+     * permissions of an existing target are kept.
+     *
+     * @param temp the file to move
+     * @param target the file to replace
+     * @throws IOException if the file can't be moved
+     */
+    static void moveAtomic(@Nonnull Path temp, @Nonnull Path target) throws IOException {
+        if (Files.isRegularFile(target)) {
+            try {
+                copyFilePermissions(target.toFile(), temp.toFile());
+            } catch (IOException e) {
+                // best effort, the content matters more than the permissions
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes a temporary file after {@code cause} aborted writing it, attaching a failure to delete it to
+     * {@code cause}.
+     */
+    static void deleteTempFile(@Nonnull Path file, @Nonnull Exception cause) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static void syncDirectory(@Nullable Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories can't be opened on Windows, where metadata changes are durable anyway
+            if (File.separatorChar != '\\') {
+                throw e;
+            }
+        }
+    }
+
     /**
      * Deletes a file.
      *
@@ -457,76 +763,94 @@ public class FileUtils {
      * @return an array of files for the wanted extensions
      */
     public static String[] getFilesFromExtension(@Nonnull String directory, @Nonnull String... extensions) {
-        List<String> files = new ArrayList<>();
-
-        File currentDir = new File(directory);
-
-        String[] unknownFiles = currentDir.list();
+        return getFilesFromExtension(directory, false, extensions);
+    }
 
-        if (unknownFiles == null) {
+    /**
+     * Given a directory and an array of extensions return an array of compliant files, optionally walking the
+     * subdirectories of <code>directory</code> in parallel.
+     *
+     * <p>The given extensions should be like "java" and not like ".java". Files without an extension are matched by
+     * an empty string. Directories named <code>CVS</code> are skipped, as are directories that can't be read.</p>
+     *
+     * @param directory  the path of the directory
+     * @param parallel   whether to walk the subdirectories of <code>directory</code> concurrently
+     * @param extensions an array of expected extensions
+     * @return the absolute paths of the files for the wanted extensions, in the order a sequential walk finds them
+     * @since 3.5.0
+     */
+    @Nonnull
+    public static String[] getFilesFromExtension(
+            @Nonnull String directory, boolean parallel, @Nonnull String... extensions) {
+        Path root = new File(directory).getAbsoluteFile().toPath();
+        if (!Files.isDirectory(root)) {
             return new String[0];
         }
+        Set<String> wanted = new HashSet<>(Arrays.asList(extensions));
 
-        for (String unknownFile : unknownFiles) {
-            String currentFileName = directory + FileSystems.getDefault().getSeparator() + unknownFile;
-            File currentFile = new File(currentFileName);
-
-            if (currentFile.isDirectory()) {
-                // ignore all CVS directories...
-                if (currentFile.getName().equals("CVS")) {
-                    continue;
-                }
-
-                // ok... traverse into this directory and get all the files... then combine
-                // them with the current list.
-
-                String[] fetchFiles = getFilesFromExtension(currentFileName, extensions);
-                files = blendFilesToList(files, fetchFiles);
-            } else {
-                // ok... add the file
+        if (!parallel) {
+            List<String> files = new ArrayList<>();
+            walkFilesFromExtension(root, root, wanted, files);
+            return files.toArray(new String[0]);
+        }
 
-                String add = currentFile.getAbsolutePath();
-                if (isValidFile(add, extensions)) {
-                    files.add(add);
-                }
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path entry : stream) {
+                entries.add(entry);
             }
+        } catch (IOException | DirectoryIteratorException e) {
+            return new String[0];
         }
-
-        // ok... move the Vector into the files list...
-        String[] foundFiles = new String[files.size()];
-        files.toArray(foundFiles);
-
-        return foundFiles;
+        return entries.parallelStream()
+                .flatMap(entry -> {
+                    List<String> files = new ArrayList<>();
+                    walkFilesFromExtension(root, entry, wanted, files);
+                    return files.stream();
+                })
+                .toArray(String[]::new);
     }
 
     /**
-     * Private helper method for getFilesFromExtension()
+     * Private helper method for getFilesFromExtension(), collecting the matching files below <code>start</code> in a
+     * single walk that reads the attributes of every entry once.
      */
-    @Nonnull
-    private static List<String> blendFilesToList(@Nonnull List<String> v, @Nonnull String... files) {
-        Collections.addAll(v, files);
-
-        return v;
-    }
+    private static void walkFilesFromExtension(
+            @Nonnull Path root, @Nonnull Path start, @Nonnull Set<String> extensions, @Nonnull List<String> files) {
+        try {
+            Files.walkFileTree(
+                    start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            // ignore all CVS directories...
+                            return !dir.equals(root) && "CVS".equals(String.valueOf(dir.getFileName()))
+                                    ? FileVisitResult.SKIP_SUBTREE
+                                    : FileVisitResult.CONTINUE;
+                        }
 
-    /**
-     * Checks to see if a file is of a particular type(s).
-     * Note that if the file does not have an extension, an empty string
-     * (&quot;&quot;) is matched for.
-     */
-    private static boolean isValidFile(@Nonnull String file, @Nonnull String... extensions) {
-        String extension = extension(file);
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (extensions.contains(extension(file.getFileName().toString()))) {
+                                files.add(file.toString());
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
 
-        // ok.. now that we have the "extension" go through the current know
-        // excepted extensions and determine if this one is OK.
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                            // unreadable directories and symbolic link loops are skipped
+                            return FileVisitResult.CONTINUE;
+                        }
 
-        for (String extension1 : extensions) {
-            if (extension1.equals(extension)) {
-                return true;
-            }
+                        @Override
+                        public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException e) {
+            // not thrown by the visitor above
+            throw new UncheckedIOException(e);
         }
-
-        return false;
     }
 
     /**
@@ -555,6 +879,9 @@ public class FileUtils {
 
     /**
      * Compare the contents of two files to determine if they are equal or not.
+     * <p>
+     * Files of different size are considered different without reading them.
+     * </p>
      *
      * @param file1 the first file
      * @param file2 the second file
@@ -579,10 +906,24 @@ public class FileUtils {
             return false;
         }
 
-        try (InputStream input1 = new FileInputStream(file1);
-                InputStream input2 = new FileInputStream(file2)) {
-            return IOUtils.contentEquals(input1, input2);
-        }
+        return FileComparator.contentEquals(file1.toPath(), file2.toPath());
+    }
+
+    /**
+     * Compare two directory trees. Files present in both trees are compared in parallel, just like
+     * {@link #contentEquals(File, File)} does. Symbolic links to directories are not followed.
+     *
+     * @param directory1 the first directory
+     * @param directory2 the second directory
+     * @return the sorted paths relative to the directories, separated by {@code '/'}, of all files and directories
+     *         which differ or exist in one tree only. Empty if both trees are equal.
+     * @throws IOException if a tree can't be walked or a file can't be read
+     * @since 3.5.0
+     */
+    @Nonnull
+    public static List<String> contentDifferences(@Nonnull final File directory1, @Nonnull final File directory2)
+            throws IOException {
+        return FileComparator.differences(directory1.toPath(), directory2.toPath());
     }
 
     /**
@@ -762,7 +1103,7 @@ public class FileUtils {
         }
     }
 
-    private static void mkdirsFor(@Nonnull File destination) {
+    static void mkdirsFor(@Nonnull File destination) {
         // does destination directory exist ?
         if (destination.getParentFile() != null && !destination.getParentFile().exists()) {
             //noinspection ResultOfMethodCallIgnored
@@ -830,46 +1171,35 @@ public class FileUtils {
      *     StandardCopyOption.REPLACE_EXISTING)}
      */
     public static void copyURLToFile(@Nonnull final URL source, @Nonnull final File destination) throws IOException {
-        copyStreamToFile(source.openStream(), destination);
+        URLCopier.copy(source, destination, bytes -> {});
     }
 
     /**
-     * Copies bytes from the {@link InputStream} <code>source</code> to a file <code>destination</code>.
+     * Copies bytes from the URL <code>source</code> to a file <code>destination</code>, reporting the progress.
      * The directories up to <code>destination</code> will be created if they don't already exist.
      * <code>destination</code> will be overwritten if it already exists.
+     * <p>
+     * Local files are copied channel to channel and entries of local archives are read straight from the archive.
+     * The bytes are written to a temporary file that replaces <code>destination</code> once complete, so a failed
+     * copy never leaves a truncated file behind.
+     * </p>
      *
-     * @param source      an {@link InputStream} to copy bytes from. This stream is
-     *                    guaranteed to be closed.
+     * @param source      a <code>URL</code> to copy bytes from
      * @param destination a non-directory <code>File</code> to write bytes to (possibly
      *                    overwriting)
+     * @param progress    notified with the total number of bytes copied so far
      * @throws IOException if
      *                     <ul>
-     *                     <li><code>source</code> cannot be opened</li>
+     *                     <li><code>source</code> URL cannot be opened</li>
      *                     <li><code>destination</code> cannot be written to</li>
-     *                     <li>an I/O error occurs during copying</li>
+     *                     <li>an IO error occurs during copying</li>
      *                     </ul>
-     * @deprecated use {@code java.nio.Files.copy(source, destination.toPath(),
-     *     StandardCopyOption.REPLACE_EXISTING)}
+     * @since 3.5.0
      */
-    @Deprecated
-    private static void copyStreamToFile(@Nonnull @WillClose final InputStream source, @Nonnull final File destination)
+    public static void copyURLToFile(
+            @Nonnull final URL source, @Nonnull final File destination, @Nonnull final LongConsumer progress)
             throws IOException {
-        // does destination directory exist ?
-        if (destination.getParentFile() != null && !destination.getParentFile().exists()) {
-            // noinspection ResultOfMethodCallIgnored
-            destination.getParentFile().mkdirs();
-        }
-
-        // make sure we can write to destination
-        if (destination.exists() && !destination.canWrite()) {
-            final String message = "Unable to open file " + destination + " for writing.";
-            throw new IOException(message);
-        }
-
-        try (OutputStream out = new FileOutputStream(destination);
-                InputStream in = source) {
-            IOUtil.copy(in, out);
-        }
+        URLCopier.copy(source, destination, progress);
     }
 
     /**
@@ -1160,12 +1490,53 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Delete a directory without waiting for its content to be removed.
+     * <p>
+     * The directory is atomically renamed to a hidden sibling, so its original path is free again when this method
+     * returns, and the renamed tree is deleted by a background thread. Leftovers of previous background deletions of
+     * the same directory are removed as well. When the directory can't be renamed, e.g. because the file system
+     * doesn't support atomic moves, it is deleted synchronously like {@link #deleteDirectory(File)} does.
+     * Pending deletions are finished before the JVM shuts down.
+     * </p>
+     *
+     * @param directory a directory
+     * @return a future completed once the directory is gone, or completed exceptionally with the
+     *         {@link IOException} of the background deletion
+     * @throws IOException if the directory has to be deleted synchronously and that fails
+     * @see #awaitBackgroundDeletions(long, TimeUnit)
+     * @since 3.5.0
+     */
+    @Nonnull
+    public static CompletableFuture<Void> deleteDirectoryInBackground(@Nonnull final File directory)
+            throws IOException {
+        return DirectoryDeleter.deleteInBackground(directory.toPath());
+    }
+
+    /**
+     * Wait for all deletions started by {@link #deleteDirectoryInBackground(File)} to finish.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of {@code timeout}
+     * @return {@code true} if all deletions finished, {@code false} if the timeout elapsed before
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @since 3.5.0
+     */
+    public static boolean awaitBackgroundDeletions(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return DirectoryDeleter.awaitBackgroundDeletions(timeout, unit);
+    }
+
     /**
      * Remove all files from a directory without deleting it.
+     * <p>
+     * The files of each directory are deleted in parallel and sub directories are removed bottom-up.
+     * Symbolic links found inside the directory are deleted, their targets are left untouched.
+     * </p>
      *
      * @param directory a directory
      * @throws IOException if any. This can leave cleaning in a half-finished state where
-     *         some but not all files have been deleted.
+     *         some but not all files have been deleted. Every individual failure is attached
+     *         as a suppressed exception.
      * @deprecated use {@code org.apache.commons.io.FileUtils.cleanDirectory()}
      */
     @Deprecated
@@ -1180,25 +1551,7 @@ public class FileUtils {
             throw new IllegalArgumentException(message);
         }
 
-        IOException exception = null;
-
-        final File[] files = directory.listFiles();
-
-        if (files == null) {
-            return;
-        }
-
-        for (final File file : files) {
-            try {
-                forceDelete(file);
-            } catch (final IOException ioe) {
-                exception = ioe;
-            }
-        }
-
-        if (null != exception) {
-            throw exception;
-        }
+        DirectoryDeleter.delete(directory.toPath(), false);
     }
 
     /**
@@ -1214,10 +1567,11 @@ public class FileUtils {
     }
 
     /**
-     * Recursively count size of a directory.
+     * Recursively count size of a directory. Symbolic links are followed.
      *
      * @param directory a directory
      * @return size of directory in bytes
+     * @see DirectorySizeCalculator
      * @deprecated use {@code org.apache.commons.io.FileUtils.sizeOf()}
      */
     @Deprecated
@@ -1232,22 +1586,18 @@ public class FileUtils {
             throw new IllegalArgumentException(message);
         }
 
-        long size = 0;
-
-        final File[] files = directory.listFiles();
-        if (files == null) {
-            throw new IllegalArgumentException("Problems reading directory");
+        final DirectorySizeCalculator calculator = new DirectorySizeCalculator(directory);
+        calculator.setFollowSymlinks(true);
+        final DirectorySize size;
+        try {
+            size = calculator.calculate();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Problems reading directory", e);
         }
-
-        for (final File file : files) {
-            if (file.isDirectory()) {
-                size += sizeOfDirectory(file);
-            } else {
-                size += file.length();
-            }
+        if (!size.getUnreadablePaths().isEmpty()) {
+            throw new IllegalArgumentException("Problems reading directory");
         }
-
-        return size;
+        return size.getTotalBytes();
     }
 
     /**
@@ -1743,56 +2093,55 @@ public class FileUtils {
                 } else {
                     CharsetEncoder encoder = charset.newEncoder();
 
-                    int totalBufferSize = FILE_COPY_BUFFER_SIZE;
-
-                    int charBufferSize = (int) Math.floor(totalBufferSize / (2 + 2 * encoder.maxBytesPerChar()));
+                    int charBufferSize = FILTERED_COPY_BUFFER_SIZE;
                     int byteBufferSize = (int) Math.ceil(charBufferSize * encoder.maxBytesPerChar());
 
-                    CharBuffer newChars = CharBuffer.allocate(charBufferSize);
-                    ByteBuffer newBytes = ByteBuffer.allocate(byteBufferSize);
-                    ByteBuffer existingBytes = ByteBuffer.allocate(byteBufferSize);
+                    char[] newCharArray = BufferPool.takeChars(charBufferSize);
+                    byte[] newByteArray = BufferPool.takeBytes(byteBufferSize);
+                    byte[] existingByteArray = BufferPool.takeBytes(byteBufferSize);
+
+                    // pooled arrays may be larger than needed, slicing keeps the buffers at their intended capacity
+                    CharBuffer newChars = CharBuffer.wrap(newCharArray, 0, charBufferSize).slice();
+                    ByteBuffer newBytes = ByteBuffer.wrap(newByteArray, 0, byteBufferSize).slice();
+                    ByteBuffer existingBytes = ByteBuffer.wrap(existingByteArray, 0, byteBufferSize).slice();
 
                     CoderResult coderResult;
-                    int existingRead;
                     boolean writing = false;
 
                     try (RandomAccessFile existing = new RandomAccessFile(to, "rw")) {
-                        int n;
-                        while (-1 != (n = wrapped.read(newChars))) {
+                        while (-1 != wrapped.read(newChars)) {
                             ((Buffer) newChars).flip();
 
-                            coderResult = encoder.encode(newChars, newBytes, n != 0);
+                            coderResult = encoder.encode(newChars, newBytes, false);
                             if (coderResult.isError()) {
                                 coderResult.throwException();
                             }
 
                             ((Buffer) newBytes).flip();
+                            writing = writeIfChanged(existing, newBytes, existingBytes, writing);
 
-                            if (!writing) {
-                                existingRead = existing.read(existingBytes.array(), 0, newBytes.remaining());
-                                ((Buffer) existingBytes).position(existingRead);
-                                ((Buffer) existingBytes).flip();
-
-                                if (newBytes.compareTo(existingBytes) != 0) {
-                                    writing = true;
-                                    if (existingRead > 0) {
-                                        existing.seek(existing.getFilePointer() - existingRead);
-                                    }
-                                }
-                            }
-
-                            if (writing) {
-                                existing.write(newBytes.array(), 0, newBytes.remaining());
-                            }
-
-                            ((Buffer) newChars).clear();
+                            // keeps a high surrogate the read separated from its low surrogate
+                            newChars.compact();
                             ((Buffer) newBytes).clear();
                             ((Buffer) existingBytes).clear();
                         }
 
+                        ((Buffer) newChars).flip();
+                        coderResult = encoder.encode(newChars, newBytes, true);
+                        if (coderResult.isError()) {
+                            coderResult.throwException();
+                        }
+                        encoder.flush(newBytes);
+                        ((Buffer) newBytes).flip();
+                        writeIfChanged(existing, newBytes, existingBytes, writing);
+
                         if (existing.length() > existing.getFilePointer()) {
                             existing.setLength(existing.getFilePointer());
                         }
+                    } finally {
+                        BufferPool.release(newCharArray);
+                        BufferPool.release(newByteArray);
+                        BufferPool.release(existingByteArray);
                     }
                 }
             }
@@ -1801,6 +2150,37 @@ public class FileUtils {
         copyFilePermissions(from, to);
     }
 
+    /**
+     * Compares the encoded bytes with the existing content at the current file position until they differ, from then
+     * on the bytes are written over the existing content.
+     *
+     * @return whether the file is being written
+     */
+    private static boolean writeIfChanged(
+            RandomAccessFile existing, ByteBuffer newBytes, ByteBuffer existingBytes, boolean writing)
+            throws IOException {
+        if (!writing) {
+            int existingRead = existing.read(existingBytes.array(), 0, newBytes.remaining());
+            if (existingRead < 0) {
+                // the existing file is a prefix of the new content
+                writing = newBytes.hasRemaining();
+            } else {
+                ((Buffer) existingBytes).position(existingRead);
+                ((Buffer) existingBytes).flip();
+
+                if (newBytes.compareTo(existingBytes) != 0) {
+                    writing = true;
+                    existing.seek(existing.getFilePointer() - existingRead);
+                }
+            }
+        }
+
+        if (writing) {
+            existing.write(newBytes.array(), 0, newBytes.remaining());
+        }
+        return writing;
+    }
+
     /**
      * Attempts to copy file permissions from the source to the destination file.
      * Initially attempts to copy posix file permissions, assuming that the files are both on posix filesystems.
@@ -1811,7 +2191,7 @@ public class FileUtils {
      * @param source the file to copy permissions from.
      * @param destination the file to copy permissions to.
      */
-    private static void copyFilePermissions(@Nonnull File source, @Nonnull File destination) throws IOException {
+    static void copyFilePermissions(@Nonnull File source, @Nonnull File destination) throws IOException {
         try {
             // attempt to copy posix file permissions
             Files.setPosixFilePermissions(destination.toPath(), Files.getPosixFilePermissions(source.toPath()));
@@ -1855,7 +2235,7 @@ public class FileUtils {
      * @param encoding the name or alias of the charset, null or empty
      * @return A charset object for the named or default charset.
      */
-    private static Charset charset(String encoding) {
+    static Charset charset(String encoding) {
         if (encoding == null || encoding.isEmpty()) {
             return Charset.defaultCharset();
         } else {
@@ -21,9 +21,10 @@ package org.apache.maven.shared.utils.io;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -32,8 +33,18 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * <p>General IO Stream manipulation.</p>
@@ -114,6 +125,21 @@ public final class IOUtil
 {
     private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
 
+    /**
+     * The number of bytes of each stream compared at once by {@link #contentEquals(InputStream, InputStream)}.
+     */
+    private static final int COMPARE_BLOCK_SIZE = 1024 * 8;
+
+    /**
+     * The largest array size the VM can allocate safely.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Streams known to be longer (8 MB) are decoded chunk by chunk rather than read into a single array first.
+     */
+    private static final int STREAMING_DECODE_THRESHOLD = 1024 * 1024 * 8;
+
     /**
      * Private constructor to prevent instantiation.
      */
@@ -141,6 +167,7 @@ public final class IOUtil
      * Copy bytes from an <code>InputStream</code> to an <code>OutputStream</code>.
      *
      * In Java 9 and later this is replaced by {@code InputStream.transferTo()}.
+     * Copies from a {@code FileInputStream} to a {@code FileOutputStream} are done by the operating system.
      *
      * @param input the stream to read from
      * @param output the stream to write to
@@ -152,13 +179,50 @@ public final class IOUtil
     @Deprecated
     public static void copy(@Nonnull final InputStream input, @Nonnull final OutputStream output, final int bufferSize)
             throws IOException {
-        final byte[] buffer = new byte[bufferSize];
-        int n;
-        while (-1 != (n = input.read(buffer))) {
-            output.write(buffer, 0, n);
+        final byte[] buffer = BufferPool.takeBytes(bufferSize);
+        try {
+            transferFileChannels(input, output);
+            int n;
+            while (-1 != (n = input.read(buffer, 0, bufferSize))) {
+                output.write(buffer, 0, n);
+            }
+        } finally {
+            BufferPool.release(buffer);
         }
     }
 
+    /**
+     * When copying from a plain file to a plain file, let the kernel move the bytes up to the current size of the
+     * source without passing them through the Java heap. The position of the input stream is advanced accordingly,
+     * anything written to the source meanwhile is left for the regular copy loop.
+     * Subclasses are left alone as they may override how bytes are read or written.
+     */
+    private static void transferFileChannels(@Nonnull final InputStream input, @Nonnull final OutputStream output)
+            throws IOException {
+        if (input.getClass() != FileInputStream.class || output.getClass() != FileOutputStream.class) {
+            return;
+        }
+        final FileChannel source = ((FileInputStream) input).getChannel();
+        final FileChannel target = ((FileOutputStream) output).getChannel();
+        long position;
+        final long size;
+        try {
+            position = source.position();
+            size = source.size();
+        } catch (IOException e) {
+            // not seekable, e.g. a pipe or a terminal opened as a file
+            return;
+        }
+        while (position < size) {
+            final long transferred = source.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        source.position(position);
+    }
+
     /**
      * Copy chars from a <code>Reader</code> to a <code>Writer</code>.
      *
@@ -183,10 +247,14 @@ public final class IOUtil
     @Deprecated
     public static void copy(@Nonnull final Reader input, @Nonnull final Writer output, final int bufferSize)
             throws IOException {
-        final char[] buffer = new char[bufferSize];
-        int n;
-        while (-1 != (n = input.read(buffer))) {
-            output.write(buffer, 0, n);
+        final char[] buffer = BufferPool.takeChars(bufferSize);
+        try {
+            int n;
+            while (-1 != (n = input.read(buffer, 0, bufferSize))) {
+                output.write(buffer, 0, n);
+            }
+        } finally {
+            BufferPool.release(buffer);
         }
         output.flush();
     }
@@ -308,6 +376,10 @@ public final class IOUtil
     @Deprecated
     @Nonnull
     public static String toString(@Nonnull final InputStream input, final int bufferSize) throws IOException {
+        if (bufferSize > 0) {
+            return decode(input, Charset.defaultCharset(), bufferSize);
+        }
+        // an invalid buffer size is reported by copy
         final StringWriter sw = new StringWriter();
         copy(input, sw, bufferSize);
         return sw.toString();
@@ -346,11 +418,95 @@ public final class IOUtil
     @Nonnull
     public static String toString(
             @Nonnull final InputStream input, @Nonnull final String encoding, final int bufferSize) throws IOException {
+        if (bufferSize > 0) {
+            Objects.requireNonNull(input);
+            return decode(input, charset(encoding), bufferSize);
+        }
+        // an invalid buffer size is reported by copy
         final StringWriter sw = new StringWriter();
         copy(input, sw, encoding, bufferSize);
         return sw.toString();
     }
 
+    /**
+     * Decodes a whole stream. Streams of unknown or moderate length are read into a single array and turned into a
+     * String at once, which lets the JDK use its intrinsic ASCII and Latin-1 paths. Large streams of known length are
+     * decoded chunk by chunk into a pre-sized builder, so their bytes are never held in memory all at once.
+     * Malformed input is replaced, just like {@link InputStreamReader} does.
+     */
+    @Nonnull
+    private static String decode(@Nonnull final InputStream input, @Nonnull final Charset charset, final int bufferSize)
+            throws IOException {
+        final int length = knownLength(input);
+        if (length <= STREAMING_DECODE_THRESHOLD) {
+            return new String(toByteArray(input, bufferSize), charset);
+        }
+
+        final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final long expectedChars = (long) (length * (double) decoder.averageCharsPerByte());
+        final StringBuilder result = new StringBuilder((int) Math.min(expectedChars, MAX_ARRAY_SIZE));
+        // room for at least one complete character whatever the requested size
+        final int byteCount = Math.max(bufferSize, DEFAULT_BUFFER_SIZE);
+        final int charCount = (int) Math.ceil(byteCount * (double) decoder.maxCharsPerByte());
+        final byte[] bytes = BufferPool.takeBytes(byteCount);
+        final char[] chars = BufferPool.takeChars(charCount);
+        try {
+            final ByteBuffer in = ByteBuffer.wrap(bytes, 0, byteCount).slice();
+            final CharBuffer out = CharBuffer.wrap(chars, 0, charCount).slice();
+            int n;
+            while (-1 != (n = input.read(bytes, in.position(), in.remaining()))) {
+                ((Buffer) in).position(in.position() + n);
+                ((Buffer) in).flip();
+                decodeChunk(decoder, in, out, result, false);
+                in.compact();
+            }
+            ((Buffer) in).flip();
+            decodeChunk(decoder, in, out, result, true);
+            while (decoder.flush(out).isOverflow()) {
+                drain(out, result);
+            }
+            drain(out, result);
+        } finally {
+            BufferPool.release(bytes);
+            BufferPool.release(chars);
+        }
+        return result.toString();
+    }
+
+    private static void decodeChunk(
+            final CharsetDecoder decoder,
+            final ByteBuffer in,
+            final CharBuffer out,
+            final StringBuilder result,
+            final boolean endOfInput) {
+        while (decoder.decode(in, out, endOfInput).isOverflow()) {
+            drain(out, result);
+        }
+        drain(out, result);
+    }
+
+    private static void drain(final CharBuffer out, final StringBuilder result) {
+        ((Buffer) out).flip();
+        result.append(out);
+        ((Buffer) out).clear();
+    }
+
+    /**
+     * Looks up a charset, reporting unknown ones like {@link InputStreamReader} and {@link String#getBytes(String)}
+     * do.
+     */
+    @Nonnull
+    private static Charset charset(@Nonnull final String encoding) throws UnsupportedEncodingException {
+        Objects.requireNonNull(encoding, "charsetName");
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////
     // InputStream -> byte[]
 
@@ -380,11 +536,59 @@ public final class IOUtil
     @Deprecated
     @Nonnull
     public static byte[] toByteArray(@Nonnull final InputStream input, final int bufferSize) throws IOException {
-        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // an invalid buffer size is reported by copy, whatever the length of the input
+        final int length = bufferSize > 0 ? knownLength(input) : -1;
+        if (length < 0) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            copy(input, output, bufferSize);
+            return output.toByteArray();
+        }
+
+        final byte[] result = new byte[length];
+        int n = 0;
+        while (n < length) {
+            final int count = input.read(result, n, length - n);
+            if (count < 0) {
+                return Arrays.copyOf(result, n);
+            }
+            n += count;
+        }
+        final int next = input.read();
+        if (next < 0) {
+            return result;
+        }
+
+        // the input grew since its length was determined
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(length + bufferSize + 1);
+        output.write(result);
+        output.write(next);
         copy(input, output, bufferSize);
         return output.toByteArray();
     }
 
+    /**
+     * Determines the number of bytes left in streams which know it without reading them, i.e. plain files and
+     * in-memory streams. The result is a hint only, as a file may change while it is read.
+     *
+     * @param input the stream
+     * @return the number of bytes left, or {@code -1} if unknown
+     */
+    private static int knownLength(@Nonnull final InputStream input) {
+        long length = -1;
+        try {
+            if (input.getClass() == FileInputStream.class) {
+                final FileChannel channel = ((FileInputStream) input).getChannel();
+                // 0 for pipes and for files like those in /proc whose size is unknown
+                length = channel.size() - channel.position();
+            } else if (input instanceof ByteArrayInputStream) {
+                length = input.available();
+            }
+        } catch (IOException e) {
+            // the length is unknown, reading the stream will report the problem if there is one
+        }
+        return length > 0 && length <= MAX_ARRAY_SIZE ? (int) length : -1;
+    }
+
     ///////////////////////////////////////////////////////////////
     // Derived copy methods
     // Reader -> *
@@ -700,6 +904,9 @@ public final class IOUtil
     @Deprecated
     @Nonnull
     public static String toString(@Nonnull final byte[] input, final int bufferSize) throws IOException {
+        if (bufferSize > 0) {
+            return new String(input, Charset.defaultCharset());
+        }
         final StringWriter sw = new StringWriter();
         copy(input, sw, bufferSize);
         return sw.toString();
@@ -738,6 +945,10 @@ public final class IOUtil
     @Nonnull
     public static String toString(@Nonnull final byte[] input, @Nonnull final String encoding, final int bufferSize)
             throws IOException {
+        if (bufferSize > 0) {
+            Objects.requireNonNull(input);
+            return new String(input, charset(encoding));
+        }
         final StringWriter sw = new StringWriter();
         copy(input, sw, encoding, bufferSize);
         return sw.toString();
@@ -771,20 +982,45 @@ public final class IOUtil
     @Deprecated
     public static boolean contentEquals(@Nonnull final InputStream input1, @Nonnull final InputStream input2)
             throws IOException {
-        final InputStream bufferedInput1 = new BufferedInputStream(input1);
-        final InputStream bufferedInput2 = new BufferedInputStream(input2);
-
-        int ch = bufferedInput1.read();
-        while (-1 != ch) {
-            final int ch2 = bufferedInput2.read();
-            if (ch != ch2) {
-                return false;
+        if (input1 == null || input2 == null) {
+            // what reading through a BufferedInputStream used to report
+            throw new IOException("Stream closed");
+        }
+
+        final byte[] block1 = BufferPool.takeBytes(COMPARE_BLOCK_SIZE);
+        final byte[] block2 = BufferPool.takeBytes(COMPARE_BLOCK_SIZE);
+        try {
+            while (true) {
+                final int n1 = readBlock(input1, block1);
+                final int n2 = readBlock(input2, block2);
+                // ByteBuffer.equals compares in bulk, vectorized since Java 11
+                if (n1 != n2 || !ByteBuffer.wrap(block1, 0, n1).equals(ByteBuffer.wrap(block2, 0, n2))) {
+                    return false;
+                }
+                if (n1 < COMPARE_BLOCK_SIZE) {
+                    return true;
+                }
             }
-            ch = bufferedInput1.read();
+        } finally {
+            BufferPool.release(block1);
+            BufferPool.release(block2);
         }
+    }
 
-        final int ch2 = bufferedInput2.read();
-        return -1 == ch2;
+    /**
+     * Reads {@link #COMPARE_BLOCK_SIZE} bytes unless the end of the stream is reached first, so both streams of a
+     * comparison are compared at the same offsets no matter how many bytes a single read returns.
+     */
+    private static int readBlock(@Nonnull final InputStream input, @Nonnull final byte[] block) throws IOException {
+        int n = 0;
+        while (n < COMPARE_BLOCK_SIZE) {
+            final int count = input.read(block, n, COMPARE_BLOCK_SIZE - n);
+            if (count < 0) {
+                break;
+            }
+            n += count;
+        }
+        return n;
     }
 
     // ----------------------------------------------------------------------
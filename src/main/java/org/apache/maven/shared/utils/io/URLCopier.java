@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Copies the content of URLs to files.
+ * <p>
+ * The copy is dispatched by protocol: {@code file:} URLs are transferred channel to channel, entries of
+ * {@code jar:file:} URLs are streamed straight out of the archive, and everything else is read through
+ * {@link URL#openStream()}. The content is always written to a temporary file next to the destination that is moved
+ * over it once complete, so the destination is never left half written.
+ * </p>
+ * <p>
+ * Archives are kept open in a small least recently used cache, except on Windows where an open archive can't be
+ * replaced or deleted. Cached archives are closed once evicted or after not being read for a few seconds, so they
+ * don't stay open for the lifetime of the JVM.
+ * </p>
+ *
+ * @see FileUtils#copyURLToFile(URL, File, LongConsumer)
+ */
+final class URLCopier {
+    /**
+     * The number of bytes transferred between file channels at once (8 MB).
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The size of the blocks read from streams at once (64 KB).
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The number of archives kept open.
+     */
+    private static final int MAX_CACHED_ARCHIVES = 8;
+
+    /**
+     * The time after which an archive no copy reads is closed (10 s).
+     */
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final boolean CACHE_ARCHIVES = File.separatorChar != '\\';
+
+    /**
+     * The open archives in access order, guarded by itself.
+     */
+    private static final Map<Path, Archive> ARCHIVES = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Whether a check for idle archives is scheduled, guarded by {@link #ARCHIVES}.
+     */
+    private static boolean sweepScheduled;
+
+    private URLCopier() {}
+
+    /**
+     * Copies the content of a URL to a file.
+     *
+     * @param source the URL to read
+     * @param destination the file to create or replace
+     * @param progress notified with the total number of bytes copied so far
+     * @throws IOException if the URL can't be read or the file can't be written
+     */
+    static void copy(@Nonnull URL source, @Nonnull File destination, @Nonnull LongConsumer progress)
+            throws IOException {
+        FileUtils.mkdirsFor(destination);
+
+        // make sure we can write to destination
+        if (destination.exists() && !destination.canWrite()) {
+            throw new IOException("Unable to open file " + destination + " for writing.");
+        }
+
+        Path target = destination.toPath().toAbsolutePath();
+        Path temp = FileUtils.atomicTempFile(target);
+        try {
+            try (FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                Path file = localFile(source);
+                String entry = file == null ? archiveEntry(source) : null;
+                if (file != null) {
+                    transfer(file, output, progress);
+                } else if (entry != null) {
+                    extract(archive(source), entry, output, progress);
+                } else {
+                    try (InputStream input = source.openStream()) {
+                        copy(input, output, progress);
+                    }
+                }
+            }
+            FileUtils.moveAtomic(temp, target);
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteTempFile(temp, e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the regular file a {@code file:} URL denotes, or {@code null} for anything else
+     */
+    @Nullable
+    private static Path localFile(@Nonnull URL url) {
+        File file = FileUtils.toFile(url);
+        return file != null && file.isFile() ? file.toPath() : null;
+    }
+
+    /**
+     * @return the entry name of a {@code jar:} URL pointing into a local archive, or {@code null} for anything else
+     *     including nested archives
+     */
+    @Nullable
+    private static String archiveEntry(@Nonnull URL url) {
+        if (!"jar".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+        String spec = url.getFile();
+        int separator = spec.indexOf("!/");
+        if (separator < 0 || spec.indexOf("!/", separator + 2) >= 0 || !spec.regionMatches(true, 0, "file:", 0, 5)) {
+            return null;
+        }
+        String entry = spec.substring(separator + 2);
+        if (entry.isEmpty()) {
+            return null;
+        }
+        try {
+            String decoded = new URI(entry).getPath();
+            return decoded != null ? decoded : entry;
+        } catch (URISyntaxException e) {
+            return entry;
+        }
+    }
+
+    @Nonnull
+    private static Path archive(@Nonnull URL url) throws IOException {
+        String spec = url.getFile();
+        File file;
+        try {
+            file = FileUtils.toFile(new URL(spec.substring(0, spec.indexOf("!/"))));
+        } catch (MalformedURLException e) {
+            throw new IOException("Invalid archive in " + url, e);
+        }
+        return file.toPath().toAbsolutePath();
+    }
+
+    private static void transfer(@Nonnull Path source, @Nonnull FileChannel output, @Nonnull LongConsumer progress)
+            throws IOException {
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = input.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = input.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), output);
+                if (transferred <= 0) {
+                    // the file was truncated meanwhile
+                    break;
+                }
+                position += transferred;
+                progress.accept(position);
+            }
+        }
+    }
+
+    private static void extract(
+            @Nonnull Path file, @Nonnull String entryName, @Nonnull FileChannel output, @Nonnull LongConsumer progress)
+            throws IOException {
+        Archive archive = acquire(file);
+        try {
+            ZipEntry entry = archive.zip.getEntry(entryName);
+            if (entry == null) {
+                throw new FileNotFoundException("JAR entry " + entryName + " not found in " + file);
+            }
+            try (InputStream input = archive.zip.getInputStream(entry)) {
+                copy(input, output, progress);
+            }
+        } finally {
+            release(archive);
+        }
+    }
+
+    private static void copy(@Nonnull InputStream input, @Nonnull FileChannel output, @Nonnull LongConsumer progress)
+            throws IOException {
+        byte[] buffer = BufferPool.takeBytes(BLOCK_SIZE);
+        try {
+            long total = 0;
+            int n;
+            while (-1 != (n = input.read(buffer, 0, BLOCK_SIZE))) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, n);
+                while (bytes.hasRemaining()) {
+                    output.write(bytes);
+                }
+                total += n;
+                progress.accept(total);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    @Nonnull
+    private static Archive acquire(@Nonnull Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (CACHE_ARCHIVES) {
+            synchronized (ARCHIVES) {
+                Archive cached = ARCHIVES.get(file);
+                if (cached != null && cached.matches(attributes)) {
+                    cached.users++;
+                    return cached;
+                }
+            }
+        }
+
+        Archive opened = new Archive(new ZipFile(file.toFile()), attributes);
+        opened.users++;
+        if (CACHE_ARCHIVES) {
+            synchronized (ARCHIVES) {
+                Archive replaced = ARCHIVES.put(file, opened);
+                if (replaced != null) {
+                    retire(replaced);
+                }
+                Iterator<Archive> eldest = ARCHIVES.values().iterator();
+                while (ARCHIVES.size() > MAX_CACHED_ARCHIVES) {
+                    retire(eldest.next());
+                    eldest.remove();
+                }
+            }
+        } else {
+            opened.retired = true;
+        }
+        return opened;
+    }
+
+    private static void release(@Nonnull Archive archive) {
+        synchronized (ARCHIVES) {
+            archive.users--;
+            archive.lastUsed = System.nanoTime();
+            if (archive.retired && archive.users == 0) {
+                archive.close();
+            } else if (!archive.retired && !sweepScheduled) {
+                sweepScheduled = true;
+                Sweeper.INSTANCE.schedule(URLCopier::closeIdleArchives, IDLE_TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Closes the cached archives which haven't been read for {@link #IDLE_TIMEOUT_NANOS}, and checks again once the
+     * next one may have become idle.
+     */
+    private static void closeIdleArchives() {
+        synchronized (ARCHIVES) {
+            long now = System.nanoTime();
+            long nextCheck = Long.MAX_VALUE;
+            for (Iterator<Archive> archives = ARCHIVES.values().iterator(); archives.hasNext(); ) {
+                Archive archive = archives.next();
+                long idle = now - archive.lastUsed;
+                if (archive.users == 0 && idle >= IDLE_TIMEOUT_NANOS) {
+                    retire(archive);
+                    archives.remove();
+                } else {
+                    nextCheck = Math.min(nextCheck, Math.max(IDLE_TIMEOUT_NANOS - idle, 0) + 1);
+                }
+            }
+            sweepScheduled = nextCheck != Long.MAX_VALUE;
+            if (sweepScheduled) {
+                Sweeper.INSTANCE.schedule(URLCopier::closeIdleArchives, nextCheck, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Marks an archive dropped from the cache, closing it once no copy reads it anymore.
+     */
+    private static void retire(@Nonnull Archive archive) {
+        archive.retired = true;
+        if (archive.users == 0) {
+            archive.close();
+        }
+    }
+
+    /**
+     * An open archive together with the attributes it was opened with, so a replaced file is noticed.
+     */
+    private static final class Archive {
+        private final ZipFile zip;
+
+        private final FileTime lastModified;
+
+        private final long size;
+
+        private int users;
+
+        private boolean retired;
+
+        private long lastUsed;
+
+        Archive(@Nonnull ZipFile zip, @Nonnull BasicFileAttributes attributes) {
+            this.zip = zip;
+            this.lastModified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+        }
+
+        boolean matches(@Nonnull BasicFileAttributes attributes) {
+            return lastModified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+
+        void close() {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                // nothing is read from it anymore
+            }
+        }
+    }
+
+    /**
+     * Lazily created timer closing idle archives, its thread terminates when there is nothing left to check.
+     */
+    private static final class Sweeper {
+        static final ScheduledExecutorService INSTANCE = newSweeper();
+
+        private static ScheduledExecutorService newSweeper() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "URLCopier-archive-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -18,25 +18,50 @@
  */
 package org.apache.maven.shared.utils.cli;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.shared.utils.Os;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItemInArray;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 
 public class CommandLineUtilsTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     /**
      * Tests that case-insensitive environment variables are normalized to upper case.
      */
@@ -140,6 +165,311 @@ public class CommandLineUtilsTest {
         assertEquals(0, p.exitValue());
     }
 
+    @Test
+    public void streamsArePumpedByTheStreamExecutor() throws Exception {
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CommandLineUtils.setStreamExecutor(task -> {
+            tasks.incrementAndGet();
+            executor.execute(task);
+        });
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertEcho("hello" + i);
+            }
+        } finally {
+            CommandLineUtils.setStreamExecutor(null);
+            executor.shutdown();
+        }
+        assertEquals(30, tasks.get());
+    }
+
+    @Test
+    public void streamsArePumpedByDedicatedThreadsWhenRejected() throws Exception {
+        CommandLineUtils.setStreamExecutor(task -> {
+            throw new RejectedExecutionException();
+        });
+        try {
+            assertEcho("rejected");
+        } finally {
+            CommandLineUtils.setStreamExecutor(null);
+        }
+        assertEcho("default");
+    }
+
+    @Test
+    public void outputIsRedirectedToFiles() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        File out = new File(tempFolder.getRoot(), "out.txt");
+        File err = new File(tempFolder.getRoot(), "err.txt");
+        Files.write(out.toPath(), "replaced".getBytes(StandardCharsets.UTF_8));
+
+        int exitCode = CommandLineUtils.executeCommandLineRedirected(
+                shell("read line; echo \"got $line\"; echo err1 >&2; echo err2 >&2; exit 3"),
+                new ByteArrayInputStream("input\n".getBytes(StandardCharsets.UTF_8)),
+                out,
+                err,
+                0);
+
+        assertEquals(3, exitCode);
+        assertEquals("got input\n", new String(Files.readAllBytes(out.toPath()), StandardCharsets.UTF_8));
+        assertEquals("err1\nerr2\n", new String(Files.readAllBytes(err.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void redirectedOutputTailIsReported() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        File out = new File(tempFolder.getRoot(), "out.txt");
+        CommandLineUtils.StringStreamConsumer tail = new CommandLineUtils.StringStreamConsumer();
+
+        int exitCode = CommandLineUtils.executeCommandLineRedirected(
+                shell("i=0; while [ $i -lt 1000 ]; do echo line$i; i=$((i+1)); done; echo failed >&2"),
+                null,
+                out,
+                null,
+                0,
+                25,
+                tail);
+
+        assertEquals(0, exitCode);
+        assertEquals(Arrays.asList("line998", "line999", "failed"), Arrays.asList(tail.getOutput().split("\\s+")));
+        assertEquals(7897, Files.size(out.toPath()));
+    }
+
+    @Test
+    public void redirectedOutputTailIsDecodedWithTheGivenCharset() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        Path out = tempFolder.getRoot().toPath().resolve("out.txt");
+        CommandLineUtils.StringStreamConsumer tail = new CommandLineUtils.StringStreamConsumer();
+
+        int exitCode = CommandLineUtils.executeCommandLineRedirected(
+                shell("printf 'caf\\303\\251\\n'"), null, out, null, 0, 100, tail, StandardCharsets.ISO_8859_1);
+
+        assertEquals(0, exitCode);
+        assertEquals("caf\u00c3\u00a9", tail.getOutput().trim());
+    }
+
+    @Test
+    public void rawOutputIsPassedToByteStreamConsumers() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CommandLineUtils.StringStreamConsumer err = new CommandLineUtils.StringStreamConsumer();
+
+        int exitCode = CommandLineUtils.executeCommandLine(
+                shell("printf 'a\\000b\\377'; echo error >&2"),
+                (ByteStreamConsumer) bytes -> out.write(bytes.array(), bytes.position(), bytes.remaining()),
+                err);
+
+        assertEquals(0, exitCode);
+        assertArrayEquals(new byte[] {'a', 0, 'b', (byte) 0xff}, out.toByteArray());
+        assertEquals("error", err.getOutput().trim());
+    }
+
+    @Test
+    public void tailStreamConsumerKeepsTheLastLines() {
+        CommandLineUtils.TailStreamConsumer tail = new CommandLineUtils.TailStreamConsumer(3, 100);
+        assertEquals(Arrays.asList(), tail.getLines());
+
+        for (int i = 0; i < 10; i++) {
+            tail.consumeLine("line" + i);
+        }
+        assertEquals(Arrays.asList("line7", "line8", "line9"), tail.getLines());
+        assertEquals(7, tail.getDroppedLines());
+
+        tail.consumeLine(new String(new char[98]).replace('\0', 'x') + "yz");
+        assertEquals(Arrays.asList(new String(new char[98]).replace('\0', 'x') + "yz"), tail.getLines());
+        assertEquals(10, tail.getDroppedLines());
+
+        tail.consumeLine(new String(new char[200]).replace('\0', 'x') + "end");
+        assertEquals(100, tail.getLines().get(0).length());
+        assertTrue(tail.getOutput().endsWith("xend" + System.lineSeparator()));
+        assertEquals(11, tail.getDroppedLines());
+    }
+
+    @Test
+    public void tailStreamConsumerCanBeReadWhileConsuming() throws Exception {
+        CommandLineUtils.TailStreamConsumer tail = new CommandLineUtils.TailStreamConsumer(5, 1000);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 200000; i++) {
+                tail.consumeLine(Integer.toString(i));
+            }
+        });
+        producer.start();
+        while (producer.isAlive()) {
+            List<String> lines = tail.getLines();
+            for (int i = 1; i < lines.size(); i++) {
+                assertEquals(Integer.parseInt(lines.get(i - 1)) + 1, Integer.parseInt(lines.get(i)));
+            }
+        }
+        assertEquals(Arrays.asList("199995", "199996", "199997", "199998", "199999"), tail.getLines());
+        assertEquals(199995, tail.getDroppedLines());
+    }
+
+    @Test
+    public void processesAreUnregisteredOnceFinished() throws Exception {
+        int registered = ProcessRegistry.size();
+
+        assertEcho("registered");
+
+        assertEquals(registered, ProcessRegistry.size());
+    }
+
+    @Test
+    public void shutdownHookIsInstalledOnlyOnce() throws Exception {
+        assertEcho("first");
+        Thread hook = ProcessRegistry.hook();
+        assertNotNull(hook);
+
+        for (int i = 0; i < 20; i++) {
+            assertEcho("sequential " + i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> executions = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String text = "concurrent " + i;
+                executions.add(executor.submit(() -> {
+                    assertEcho(text);
+                    return null;
+                }));
+            }
+            for (Future<?> execution : executions) {
+                execution.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertSame(hook, ProcessRegistry.hook());
+        try {
+            Runtime.getRuntime().addShutdownHook(hook);
+            fail("the hook should still be registered");
+        } catch (IllegalArgumentException e) {
+            // registered already
+        }
+    }
+
+    @Test
+    public void registeredProcessesAreDestroyedGracefullyThenForcibly() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        Process polite = shell("sleep 30").execute();
+        Process stubborn = shell("trap '' TERM; while true; do sleep 1; done").execute();
+        ProcessRegistry.register(polite);
+        ProcessRegistry.register(stubborn);
+
+        long start = System.nanoTime();
+        ProcessRegistry.destroyAll(500);
+
+        assertTrue(polite.waitFor(5, TimeUnit.SECONDS));
+        assertTrue(stubborn.waitFor(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(0, ProcessRegistry.size());
+    }
+
+    @Test
+    public void timeoutsHaveMillisecondGranularity() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        long start = System.nanoTime();
+        try {
+            CommandLineUtils.executeCommandLine(shell("sleep 30"), null, null, null, Duration.ofMillis(300));
+            fail("timeout expected");
+        } catch (CommandLineTimeOutException e) {
+            assertEquals("Process timed out after 300 milliseconds.", e.getMessage());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+    }
+
+    @Test
+    public void streamsAreDecodedWithTheGivenCharset() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer err = new CommandLineUtils.StringStreamConsumer();
+
+        // the UTF-8 encoded e acute, read as two ISO-8859-1 characters
+        CommandLineUtils.executeCommandLineAsCallable(
+                        shell("printf '\\303\\251'; printf '\\303\\251' >&2"),
+                        null,
+                        out,
+                        err,
+                        Duration.ofSeconds(10),
+                        null,
+                        StandardCharsets.ISO_8859_1)
+                .call();
+
+        assertEquals("\u00c3\u00a9", out.getOutput().trim());
+        assertEquals("\u00c3\u00a9", err.getOutput().trim());
+    }
+
+    @Test
+    public void timeoutsTerminateDescendants() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        assumeTrue(ProcessTree.isDescendantsSupported());
+        CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.setTerminationGracePeriod(200, TimeUnit.MILLISECONDS);
+        try {
+            CommandLineUtils.executeCommandLine(
+                    shell("sleep 30 & echo $!; wait"), null, out, null, Duration.ofMillis(500));
+            fail("timeout expected");
+        } catch (CommandLineTimeOutException e) {
+            // expected
+        } finally {
+            CommandLineUtils.setTerminationGracePeriod(1, TimeUnit.SECONDS);
+        }
+
+        String pid = out.getOutput().trim();
+        assertTrue(pid, pid.matches("\\d+"));
+        // a zombie left to an init process that doesn't reap children counts as terminated
+        int alive = CommandLineUtils.executeCommandLine(
+                shell("s=$(ps -o stat= -p " + pid + ") && case $s in Z*) exit 1;; esac"), null, null);
+        assertEquals(1, alive);
+    }
+
+    @Test
+    public void executablesAreStartedDirectlyWithoutTheShell() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        Commandline cl = new Commandline();
+        cl.setShellCommandEnabled(false);
+        cl.setExecutable("printf");
+        cl.addArguments("%s|", "a b", "'quoted'", "$HOME", "*");
+        Arg secret = cl.createArg();
+        secret.setValue("secret");
+        secret.setMask(true);
+        cl.setWorkingDirectory(tempFolder.getRoot());
+
+        CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+        int exitCode = CommandLineUtils.executeCommandLine(cl, out, null);
+
+        assertEquals(0, exitCode);
+        assertEquals("a b|'quoted'|$HOME|*|secret|", out.getOutput().trim());
+        assertEquals("printf %s| a b 'quoted' $HOME * *****", cl.toString());
+
+        Commandline pwd = new Commandline();
+        pwd.setShellCommandEnabled(false);
+        pwd.setExecutable("pwd");
+        pwd.setWorkingDirectory(tempFolder.getRoot());
+        out = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.executeCommandLine(pwd, out, null);
+        assertEquals(tempFolder.getRoot().getCanonicalPath(), new File(out.getOutput().trim()).getCanonicalPath());
+    }
+
+    private static Commandline shell(String script) {
+        Commandline cl = new Commandline();
+        cl.setExecutable("sh");
+        cl.createArg().setValue("-c");
+        cl.createArg().setValue(script);
+        return cl;
+    }
+
+    private static void assertEcho(String text) throws Exception {
+        CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer err = new CommandLineUtils.StringStreamConsumer();
+        int exitCode = CommandLineUtils.executeCommandLine(
+                new Commandline("echo " + text), new ByteArrayInputStream(new byte[0]), out, err);
+        assertEquals(0, exitCode);
+        assertEquals(text, out.getOutput().trim());
+        assertEquals("", err.getOutput());
+    }
+
     private void assertCmdLineArgs(final String[] expected, final String cmdLine) throws Exception {
         String[] actual = CommandLineUtils.translateCommandline(cmdLine);
         assertNotNull(actual);
@@ -193,4 +523,24 @@ public class CommandLineUtilsTest {
         assertNotNull(environmentVariables);
         assertThat(environmentVariables, not(hasItemInArray("TEST_SHARED_ENV=TestValue")));
     }
+
+    @Test
+    public void malformedEnvironmentVariablesAreRejected() {
+        assertMalformedEnvironment("", "no name");
+        assertMalformedEnvironment("NUL", "a\u0000b");
+    }
+
+    private void assertMalformedEnvironment(String name, String value) {
+        Commandline commandline = new Commandline();
+        commandline.setExecutable("echo");
+        commandline.setShellEnvironmentInherited(false);
+        commandline.addEnvironment(name, value);
+
+        try {
+            commandline.execute().destroy();
+            fail("exception expected for " + name + "=" + value);
+        } catch (CommandLineException e) {
+            assertThat(e.getMessage(), containsString(name + "=" + value));
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.shared.utils.Os;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+public class ProcessSchedulerTest {
+
+    @Before
+    public void setUp() {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+    }
+
+    private static Commandline shell(String script) {
+        Commandline cl = new Commandline();
+        cl.setExecutable("sh");
+        cl.createArg().setValue("-c");
+        cl.createArg().setValue(script);
+        return cl;
+    }
+
+    @Test
+    public void exitCodesAndOutputArePassedOn() throws Exception {
+        try (ProcessScheduler scheduler = new ProcessScheduler()) {
+            List<CommandLineUtils.StringStreamConsumer> outputs = new ArrayList<>();
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+                outputs.add(out);
+                futures.add(scheduler.submit(shell("echo run" + i + "; exit " + i), out, null));
+            }
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, (int) futures.get(i).get(10, TimeUnit.SECONDS));
+                assertEquals("run" + i, outputs.get(i).getOutput().trim());
+            }
+        }
+    }
+
+    @Test
+    public void concurrencyIsLimited() throws Exception {
+        try (ProcessScheduler scheduler = new ProcessScheduler(2)) {
+            assertEquals(2, scheduler.getMaxConcurrency());
+            long start = System.nanoTime();
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(scheduler.submit(shell("sleep 0.5"), null, null));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // two rounds of two processes
+            assertThat(elapsed, greaterThanOrEqualTo(1000L));
+            assertThat(elapsed, lessThan(1900L));
+        }
+    }
+
+    @Test
+    public void timeoutsFailTheFuture() throws Exception {
+        try (ProcessScheduler scheduler = new ProcessScheduler(1)) {
+            CompletableFuture<Integer> future = scheduler.submit(shell("sleep 30"), null, null, null, 1);
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("timeout expected");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(CommandLineTimeOutException.class));
+            }
+        }
+    }
+
+    @Test
+    public void durationTimeoutsFailTheFuture() throws Exception {
+        try (ProcessScheduler scheduler = new ProcessScheduler(1)) {
+            CompletableFuture<Integer> future =
+                    scheduler.submit(shell("sleep 30"), null, null, null, Duration.ofMillis(300));
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("timeout expected");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(CommandLineTimeOutException.class));
+            }
+        }
+    }
+
+    @Test
+    public void cancellationKillsTheProcess() throws Exception {
+        try (ProcessScheduler scheduler = new ProcessScheduler(1)) {
+            CompletableFuture<Integer> running = scheduler.submit(shell("sleep 30"), null, null);
+            CompletableFuture<Integer> queued = scheduler.submit(shell("exit 7"), null, null);
+            CompletableFuture<Integer> cancelledWhileQueued = scheduler.submit(shell("exit 8"), null, null);
+            cancelledWhileQueued.cancel(true);
+            Thread.sleep(200);
+
+            running.cancel(true);
+
+            // the slot is freed as soon as the process is killed
+            assertEquals(7, (int) queued.get(10, TimeUnit.SECONDS));
+            assertTrue(running.isCancelled());
+            assertTrue(cancelledWhileQueued.isCancelled());
+        }
+    }
+
+    @Test
+    public void closeCancelsUnfinishedCommands() throws Exception {
+        CompletableFuture<Integer> running;
+        CompletableFuture<Integer> queued;
+        try (ProcessScheduler scheduler = new ProcessScheduler(1)) {
+            running = scheduler.submit(shell("sleep 30"), null, null);
+            queued = scheduler.submit(shell("exit 0"), null, null);
+        }
+        try {
+            running.get(10, TimeUnit.SECONDS);
+            fail("cancellation expected");
+        } catch (CancellationException e) {
+            assertTrue(queued.isCancelled());
+        }
+    }
+}
@@ -21,10 +21,23 @@ package org.apache.maven.shared.utils.cli;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 
 public class StreamPollFeederTest {
@@ -36,7 +49,7 @@ public class StreamPollFeederTest {
         StreamPollFeeder streamPollFeeder = new StreamPollFeeder(System.in, outputStream);
 
         // start thread
-        streamPollFeeder.start();
+        new Thread(streamPollFeeder).start();
 
         // wait a moment
         Thread.sleep(100);
@@ -60,7 +73,7 @@ public class StreamPollFeederTest {
 
         StreamPollFeeder streamPollFeeder = new StreamPollFeeder(inputStream, outputStream);
 
-        streamPollFeeder.start();
+        new Thread(streamPollFeeder).start();
 
         //  wait until all data from steam will be read
         while (outputStream.size() < testData.length()) {
@@ -73,4 +86,107 @@ public class StreamPollFeederTest {
 
         assertEquals(testData.toString(), outputStream.toString());
     }
+
+    @Test
+    public void bulkDataIsWrittenInLargeChunksAndFlushedOnce() throws Exception {
+        byte[] data = new byte[4 * 1024 * 1024];
+        new Random(42).nextBytes(data);
+        int bufferSize = 64 * 1024;
+        AtomicInteger writes = new AtomicInteger();
+        AtomicInteger flushes = new AtomicInteger();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length) {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes.incrementAndGet();
+                super.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        };
+
+        StreamPollFeeder streamPollFeeder =
+                new StreamPollFeeder(new ByteArrayInputStream(data), outputStream, bufferSize);
+        Thread thread = new Thread(streamPollFeeder);
+        thread.start();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse("feeder did not stop at the end of its input", thread.isAlive());
+        assertNull(streamPollFeeder.getException());
+        assertArrayEquals(data, outputStream.toByteArray());
+        assertEquals(data.length / bufferSize, writes.get());
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void inputAfterIdleIsPassedOnImmediately() throws Exception {
+        PipedOutputStream toFeeder = new PipedOutputStream();
+        PipedInputStream feederInput = new PipedInputStream(toFeeder);
+        PipedInputStream fromFeeder = new PipedInputStream();
+        OutputStream feederOutput = new PipedOutputStream(fromFeeder);
+
+        StreamPollFeeder streamPollFeeder = new StreamPollFeeder(feederInput, feederOutput);
+        new Thread(streamPollFeeder).start();
+
+        long[] latencies = new long[7];
+        for (int i = 0; i < latencies.length; i++) {
+            // long enough for a polling feeder to back off to its longest wait
+            Thread.sleep(200);
+            long start = System.nanoTime();
+            toFeeder.write(i);
+            toFeeder.flush();
+            assertEquals(i, fromFeeder.read());
+            latencies[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
+        // the median is robust against a few slow round trips on a busy machine, polling made it about 50 ms
+        Arrays.sort(latencies);
+        assertThat(latencies[latencies.length / 2], lessThan(30L));
+
+        streamPollFeeder.waitUntilDone();
+        assertNull(streamPollFeeder.getException());
+        assertEquals(-1, fromFeeder.read());
+    }
+
+    @Test
+    public void pendingReadIsCancelled() throws Exception {
+        PipedOutputStream toFeeder = new PipedOutputStream();
+        PipedInputStream feederInput = new PipedInputStream(toFeeder);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        StreamPollFeeder streamPollFeeder = new StreamPollFeeder(feederInput, outputStream);
+        Thread thread = new Thread(streamPollFeeder);
+        thread.start();
+        Thread.sleep(100);
+
+        streamPollFeeder.waitUntilDone();
+
+        assertFalse("pending read was not cancelled", thread.isAlive());
+        assertNull(streamPollFeeder.getException());
+        assertEquals(0, outputStream.size());
+    }
+
+    @Test
+    public void standardInputIsLeftIntactOnceDone() throws Exception {
+        PipedOutputStream toFeeder = new PipedOutputStream();
+        PipedInputStream standardInput = new PipedInputStream(toFeeder);
+        InputStream original = System.in;
+        System.setIn(standardInput);
+        try {
+            StreamPollFeeder streamPollFeeder = new StreamPollFeeder(System.in, new ByteArrayOutputStream());
+            new Thread(streamPollFeeder).start();
+            Thread.sleep(100);
+            streamPollFeeder.waitUntilDone();
+        } finally {
+            System.setIn(original);
+        }
+
+        // read by the caller once the process is done
+        toFeeder.write("hello".getBytes(StandardCharsets.US_ASCII));
+        byte[] read = new byte[5];
+        assertEquals(5, standardInput.read(read));
+        assertEquals("hello", new String(read, StandardCharsets.US_ASCII));
+    }
 }
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreamPumperTest {
+
+    private static ByteArrayInputStream lines(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("line").append(i).append('\n');
+        }
+        return new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void linesArePassedOneByOneToStreamConsumers() throws Exception {
+        List<String> consumed = new ArrayList<>();
+        StreamPumper pumper = new StreamPumper(lines(3), consumed::add);
+
+        pumper.run();
+
+        assertNull(pumper.getException());
+        assertEquals(3, consumed.size());
+        assertEquals("line2", consumed.get(2));
+    }
+
+    @Test
+    public void linesArePassedInBatchesToBatchStreamConsumers() throws Exception {
+        List<String> consumed = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        StreamPumper pumper = new StreamPumper(lines(5000), new BatchStreamConsumer() {
+            @Override
+            public void consumeLines(List<String> lines) {
+                batchSizes.add(lines.size());
+                consumed.addAll(lines);
+            }
+
+            @Override
+            public void consumeLine(String line) {
+                throw new AssertionError("lines must be passed in batches");
+            }
+        });
+
+        pumper.run();
+
+        assertNull(pumper.getException());
+        assertEquals(5000, consumed.size());
+        for (int i = 0; i < consumed.size(); i++) {
+            assertEquals("line" + i, consumed.get(i));
+        }
+        assertTrue(batchSizes.size() < 5000);
+        for (int size : batchSizes) {
+            assertTrue(size > 0 && size <= 1024);
+        }
+    }
+
+    @Test
+    public void batchesAreNotDelayedWhenTheInputStalls() throws Exception {
+        PipedOutputStream output = new PipedOutputStream();
+        BlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+        StreamPumper pumper = new StreamPumper(new PipedInputStream(output), new BatchStreamConsumer() {
+            @Override
+            public void consumeLines(List<String> lines) {
+                batches.add(new ArrayList<>(lines));
+            }
+
+            @Override
+            public void consumeLine(String line) {
+                throw new AssertionError("lines must be passed in batches");
+            }
+        });
+        pumper.start();
+
+        output.write("first\nsecond\n".getBytes(StandardCharsets.UTF_8));
+        output.flush();
+        List<String> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull("lines were held back", batch);
+        if (batch.size() == 1) {
+            batch.addAll(batches.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals("[first, second]", batch.toString());
+
+        output.close();
+        pumper.waitUntilDone();
+        assertNull(pumper.getException());
+    }
+
+    @Test
+    public void batchesAreNotHeldBackByAPartialLine() throws Exception {
+        PipedOutputStream output = new PipedOutputStream();
+        BlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+        StreamPumper pumper = new StreamPumper(new PipedInputStream(output), new BatchStreamConsumer() {
+            @Override
+            public void consumeLines(List<String> lines) {
+                batches.add(new ArrayList<>(lines));
+            }
+
+            @Override
+            public void consumeLine(String line) {
+                throw new AssertionError("lines must be passed in batches");
+            }
+        });
+        pumper.start();
+
+        output.write("complete\npartial".getBytes(StandardCharsets.UTF_8));
+        output.flush();
+        List<String> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull("lines were held back", batch);
+        assertEquals("[complete]", batch.toString());
+
+        output.write(" line\n".getBytes(StandardCharsets.UTF_8));
+        output.close();
+        pumper.waitUntilDone();
+        assertNull(pumper.getException());
+        assertEquals("[partial line]", batches.poll().toString());
+    }
+
+    @Test
+    public void batchedLinesAreSplitLikeReadLine() throws Exception {
+        List<String> consumed = new ArrayList<>();
+        StreamPumper pumper = new StreamPumper(
+                new ByteArrayInputStream("a\nb\r\nc\rd\n\nlast".getBytes(StandardCharsets.UTF_8)),
+                new BatchStreamConsumer() {
+                    @Override
+                    public void consumeLines(List<String> lines) {
+                        consumed.addAll(lines);
+                    }
+
+                    @Override
+                    public void consumeLine(String line) {
+                        throw new AssertionError("lines must be passed in batches");
+                    }
+                });
+
+        pumper.run();
+
+        assertNull(pumper.getException());
+        assertEquals("[a, b, c, d, , last]", consumed.toString());
+    }
+
+    @Test
+    public void writerStreamConsumerWritesBatches() throws Exception {
+        StringWriter writer = new StringWriter();
+        StreamPumper pumper = new StreamPumper(lines(2000), new WriterStreamConsumer(writer));
+
+        pumper.run();
+
+        assertNull(pumper.getException());
+        String[] written = writer.toString().split(System.lineSeparator());
+        assertEquals(2000, written.length);
+        assertEquals("line1999", written[1999]);
+    }
+
+    @Test
+    public void bytesArePassedUndecodedToByteStreamConsumers() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(3).nextBytes(data);
+        ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+        StreamPumper pumper = new StreamPumper(new ByteArrayInputStream(data), (ByteStreamConsumer) bytes -> {
+            assertTrue(bytes.hasRemaining());
+            consumed.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        });
+
+        pumper.run();
+
+        assertNull(pumper.getException());
+        assertArrayEquals(data, consumed.toByteArray());
+    }
+
+    @Test
+    public void byteStreamConsumersAcceptLines() throws Exception {
+        ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+        ByteStreamConsumer consumer = bytes -> consumed.write(bytes.array(), bytes.position(), bytes.remaining());
+
+        consumer.consumeLine("line");
+
+        assertEquals("line" + System.lineSeparator(), consumed.toString());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class AsyncFileOperationsTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final AsyncFileOperations async = new AsyncFileOperations(executor);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        File file = new File(tempFolder.getRoot(), "file.txt");
+
+        async.write(file, "UTF-8", "Hello \u00e9").get(10, TimeUnit.SECONDS);
+
+        assertThat(FileUtils.fileRead(file, "UTF-8"), is("Hello \u00e9"));
+        assertThat(async.read(file, "UTF-8").get(10, TimeUnit.SECONDS), is("Hello \u00e9"));
+    }
+
+    @Test
+    public void writeTruncates() throws Exception {
+        File file = tempFolder.newFile("file.txt");
+        FileUtils.fileWrite(file, "UTF-8", "a much longer content");
+
+        async.write(file, "UTF-8", "short").get(10, TimeUnit.SECONDS);
+
+        assertThat(FileUtils.fileRead(file, "UTF-8"), is("short"));
+    }
+
+    @Test
+    public void writeUnmappable() throws Exception {
+        File file = new File(tempFolder.getRoot(), "unmappable.txt");
+
+        assertFailure(async.write(file, "US-ASCII", "Hello \u00e9"), UnmappableCharacterException.class);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void readEmptyFile() throws Exception {
+        File file = tempFolder.newFile("empty.txt");
+
+        assertThat(async.readAllBytes(file).get(10, TimeUnit.SECONDS).length, is(0));
+    }
+
+    @Test
+    public void readMalformed() throws Exception {
+        File file = tempFolder.newFile("malformed.txt");
+        Files.write(file.toPath(), new byte[] {'a', (byte) 0xff});
+
+        assertFailure(async.read(file, "UTF-8"), MalformedInputException.class);
+    }
+
+    @Test
+    public void readMissing() throws Exception {
+        assertFailure(async.read(new File(tempFolder.getRoot(), "missing"), "UTF-8"), NoSuchFileException.class);
+    }
+
+    @Test
+    public void copy() throws Exception {
+        byte[] data = new byte[1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        File source = tempFolder.newFile("source.bin");
+        Files.write(source.toPath(), data);
+        File destination = new File(tempFolder.getRoot(), "sub/dir/destination.bin");
+
+        async.copy(source, destination).get(10, TimeUnit.SECONDS);
+
+        assertThat(Files.readAllBytes(destination.toPath()), is(data));
+    }
+
+    @Test
+    public void copyKeepsPermissions() throws Exception {
+        File source = tempFolder.newFile("source.sh");
+        Files.write(source.toPath(), "echo".getBytes(StandardCharsets.US_ASCII));
+        assumeTrue(source.setExecutable(true) && source.canExecute());
+        File destination = new File(tempFolder.getRoot(), "destination.sh");
+
+        async.copy(source, destination).get(10, TimeUnit.SECONDS);
+
+        assertTrue(destination.canExecute());
+    }
+
+    @Test
+    public void copyMissing() throws Exception {
+        assertFailure(
+                async.copy(new File(tempFolder.getRoot(), "missing"), new File(tempFolder.getRoot(), "to")),
+                IOException.class);
+    }
+
+    @Test
+    public void delete() throws Exception {
+        File file = tempFolder.newFile("file.txt");
+        File directory = tempFolder.newFolder("dir");
+        new File(directory, "sub").mkdir();
+        FileUtils.fileWrite(new File(directory, "sub/file.txt"), "UTF-8", "content");
+
+        CompletableFuture.allOf(async.delete(file), async.delete(directory)).get(10, TimeUnit.SECONDS);
+
+        assertThat(file.exists(), is(false));
+        assertThat(directory.exists(), is(false));
+    }
+
+    @Test
+    public void manyOperationsWithFewThreads() throws Exception {
+        List<CompletableFuture<Void>> copies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final File source = new File(tempFolder.getRoot(), "source" + i + ".txt");
+            final File destination = new File(tempFolder.getRoot(), "destination" + i + ".txt");
+            copies.add(async.write(source, "UTF-8", "content " + i).thenCompose(v -> async.copy(source, destination)));
+        }
+
+        CompletableFuture.allOf(copies.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 200; i++) {
+            File destination = new File(tempFolder.getRoot(), "destination" + i + ".txt");
+            assertThat(new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8), is("content " + i));
+        }
+    }
+
+    private static void assertFailure(CompletableFuture<?> future, Class<? extends Throwable> expected)
+            throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("failure expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(expected));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.maven.shared.utils.Os;
+import org.apache.maven.shared.utils.testhelpers.FileTestHelper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeFalse;
+
+public class DirectorySizeCalculatorTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File rootDir;
+
+    @Before
+    public void createTestData() throws IOException {
+        rootDir = tempFolder.newFolder("root");
+        File folder1 = new File(rootDir, "folder1");
+        File folder2 = new File(folder1, "folder2");
+        folder2.mkdirs();
+
+        FileTestHelper.generateTestFile(new File(rootDir, "file1.txt"), 11);
+        FileTestHelper.generateTestFile(new File(folder1, "file2.txt"), 120);
+        FileTestHelper.generateTestFile(new File(folder2, "file3.txt"), 1300);
+        FileTestHelper.generateTestFile(new File(folder2, "file4.txt"), 14);
+    }
+
+    @Test
+    public void sequential() throws IOException {
+        assertTestData(calculate(false));
+    }
+
+    @Test
+    public void parallel() throws IOException {
+        assertTestData(calculate(true));
+    }
+
+    private DirectorySize calculate(boolean parallel) throws IOException {
+        DirectorySizeCalculator calculator = new DirectorySizeCalculator(rootDir);
+        calculator.setParallel(parallel);
+        calculator.setLargestFilesCount(2);
+        return calculator.calculate();
+    }
+
+    private void assertTestData(DirectorySize size) {
+        assertThat(size.getFileCount(), is(4L));
+        assertThat(size.getDirectoryCount(), is(2L));
+        assertThat(size.getTotalBytes(), is(1445L));
+        assertThat(
+                new ArrayList<>(size.getLargestFiles().keySet()),
+                is(Arrays.asList(
+                        rootDir.toPath().resolve("folder1/folder2/file3.txt"),
+                        rootDir.toPath().resolve("folder1/file2.txt"))));
+        assertThat(size.getLargestFiles().get(rootDir.toPath().resolve("folder1/file2.txt")), is(120L));
+        assertThat(size.getUnreadablePaths().isEmpty(), is(true));
+    }
+
+    @Test
+    public void deduplicateHardLinks() throws IOException {
+        Files.createLink(rootDir.toPath().resolve("link.txt"), rootDir.toPath().resolve("folder1/file2.txt"));
+
+        for (boolean parallel : new boolean[] {false, true}) {
+            DirectorySizeCalculator calculator = new DirectorySizeCalculator(rootDir);
+            calculator.setParallel(parallel);
+            assertThat(calculator.calculate().getTotalBytes(), is(1565L));
+
+            calculator.setDeduplicateHardLinks(true);
+            assertThat(calculator.calculate().getTotalBytes(), is(1445L));
+        }
+    }
+
+    @Test
+    public void symlinkCycle() throws IOException {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        Files.createSymbolicLink(rootDir.toPath().resolve("folder1/folder2/loop"), rootDir.toPath());
+
+        for (boolean parallel : new boolean[] {false, true}) {
+            DirectorySizeCalculator calculator = new DirectorySizeCalculator(rootDir);
+            calculator.setParallel(parallel);
+            assertThat(calculator.calculate().getFileCount(), is(5L));
+            assertThat(calculator.calculate().getTotalBytes(), is(1445L));
+
+            calculator.setFollowSymlinks(true);
+            DirectorySize size = calculator.calculate();
+            assertThat(size.getFileCount(), is(4L));
+            assertThat(size.getTotalBytes(), is(1445L));
+            assertThat(size.getUnreadablePaths().isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void unreadableDirectory() throws IOException {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        File folder1 = new File(rootDir, "folder1");
+        folder1.setReadable(false);
+        try {
+            assumeFalse("running with privileges ignoring permissions", Files.isReadable(folder1.toPath()));
+
+            for (boolean parallel : new boolean[] {false, true}) {
+                DirectorySizeCalculator calculator = new DirectorySizeCalculator(rootDir);
+                calculator.setParallel(parallel);
+                DirectorySize size = calculator.calculate();
+                assertThat(size.getTotalBytes(), is(11L));
+                assertThat(size.getUnreadablePaths(), is(Arrays.asList(folder1.toPath())));
+            }
+        } finally {
+            folder1.setReadable(true);
+        }
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void nonExistent() throws IOException {
+        new DirectorySizeCalculator(new File(rootDir, "missing")).calculate();
+    }
+
+    @Test(expected = NotDirectoryException.class)
+    public void notADirectory() throws IOException {
+        new DirectorySizeCalculator(new File(rootDir, "file1.txt")).calculate();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FileOperationPlanTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void execute() throws Exception {
+        File root = tempFolder.getRoot();
+        File source = new File(root, "source");
+        File output = new File(root, "output");
+        new File(output, "stale").mkdirs();
+        FileUtils.fileWrite(new File(output, "stale/old.txt"), "UTF-8", "old");
+
+        FileOperationPlan plan = new FileOperationPlan();
+        plan.delete(output);
+        plan.delete(new File(output, "stale"));
+        for (int i = 0; i < 50; i++) {
+            File file = new File(source, "dir" + (i % 5) + "/file" + i + ".txt");
+            file.getParentFile().mkdirs();
+            FileUtils.fileWrite(file, "UTF-8", "content " + i);
+            plan.copy(file, new File(output, "dir" + (i % 5) + "/file" + i + ".txt"));
+        }
+        File movable = new File(root, "movable.txt");
+        FileUtils.fileWrite(movable, "UTF-8", "moved");
+        plan.move(movable, new File(output, "moved/movable.txt"));
+        plan.mkdir(new File(output, "empty/dir"));
+
+        FileOperationPlan.Report report = plan.execute();
+
+        assertThat(report.getFailures().toString(), report.isSuccessful(), is(true));
+        assertThat(report.getDeletedCount(), is(1));
+        assertThat(report.getCopiedCount(), is(50));
+        assertThat(report.getMovedCount(), is(1));
+        assertThat(new File(output, "stale").exists(), is(false));
+        assertThat(FileUtils.fileRead(new File(output, "dir3/file13.txt"), "UTF-8"), is("content 13"));
+        assertThat(FileUtils.fileRead(new File(output, "moved/movable.txt"), "UTF-8"), is("moved"));
+        assertThat(movable.exists(), is(false));
+        assertThat(new File(output, "empty/dir").isDirectory(), is(true));
+    }
+
+    @Test
+    public void conflictsAreReportedBeforeExecution() throws Exception {
+        File root = tempFolder.getRoot();
+        File a = tempFolder.newFile("a.txt");
+        File b = tempFolder.newFile("b.txt");
+        File target = new File(root, "target.txt");
+
+        FileOperationPlan plan = new FileOperationPlan();
+        plan.copy(a, target);
+        plan.copy(b, target);
+        plan.move(a, new File(root, "c.txt"));
+        plan.delete(b);
+        plan.mkdir(new File(root, "created"));
+
+        try {
+            plan.execute();
+            fail("conflicts expected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("write the same file"));
+            assertThat(e.getMessage(), containsString("both need"));
+            assertThat(e.getMessage(), containsString("removes the source"));
+        }
+        assertThat(new File(root, "created").exists(), is(false));
+        assertThat(target.exists(), is(false));
+    }
+
+    @Test
+    public void conflictsOfNestedPathsAreReported() throws Exception {
+        File root = tempFolder.getRoot();
+        File directory = tempFolder.newFolder("dir");
+        File file = new File(directory, "file.txt");
+        FileUtils.fileWrite(file, "UTF-8", "content");
+
+        FileOperationPlan plan = new FileOperationPlan();
+        plan.move(directory, new File(root, "moved"));
+        plan.copy(file, new File(root, "copy.txt"));
+        plan.copy(new File(root, "copy.txt"), new File(root, "moved/copy.txt"));
+
+        try {
+            plan.execute();
+            fail("conflicts expected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("both need"));
+            assertThat(e.getMessage(), containsString("writes into the target"));
+            assertThat(e.getMessage(), containsString("overwrites the source"));
+        }
+        assertThat(file.exists(), is(true));
+    }
+
+    @Test
+    public void failuresAreCollected() throws Exception {
+        File root = tempFolder.getRoot();
+        File existing = tempFolder.newFile("existing.txt");
+
+        FileOperationPlan plan = new FileOperationPlan();
+        plan.copy(new File(root, "missing1.txt"), new File(root, "out/1.txt"));
+        plan.copy(new File(root, "missing2.txt"), new File(root, "out/2.txt"));
+        plan.copy(existing, new File(root, "out/3.txt"));
+        plan.copy(existing, existing);
+
+        FileOperationPlan.Report report = plan.execute();
+
+        assertThat(report.isSuccessful(), is(false));
+        assertThat(report.getFailures().size(), is(2));
+        assertThat(report.getCopiedCount(), is(1));
+        try {
+            report.rethrowFailures();
+            fail("failure expected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("missing1.txt"));
+            assertThat(e.getSuppressed().length, is(1));
+        }
+    }
+}
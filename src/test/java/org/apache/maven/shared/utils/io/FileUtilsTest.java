@@ -34,12 +34,21 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnmappableCharacterException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.maven.shared.utils.Os;
@@ -63,6 +72,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeThat;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * This is used to test FileUtils for correctness.
@@ -263,6 +273,44 @@ public class FileUtilsTest {
         assertThat(FileUtils.contentEquals(file, file2), is(true));
     }
 
+    @Test
+    public void contentEqualsLargeFiles() throws Exception {
+        File file1 = new File(tempFolder.getRoot(), "large1.bin");
+        File file2 = new File(tempFolder.getRoot(), "large2.bin");
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        Files.write(file1.toPath(), data);
+        Files.write(file2.toPath(), data);
+        assertThat(FileUtils.contentEquals(file1, file2), is(true));
+
+        data[data.length - 1]++;
+        Files.write(file2.toPath(), data);
+        assertThat(FileUtils.contentEquals(file1, file2), is(false));
+
+        Files.write(file2.toPath(), Arrays.copyOf(data, data.length - 1));
+        assertThat(FileUtils.contentEquals(file1, file2), is(false));
+    }
+
+    @Test
+    public void contentDifferences() throws Exception {
+        File dir1 = tempFolder.newFolder("tree1");
+        File dir2 = tempFolder.newFolder("tree2");
+        for (File dir : new File[] {dir1, dir2}) {
+            new File(dir, "sub/deeper").mkdirs();
+            FileUtils.fileWrite(new File(dir, "same.txt"), "UTF-8", "same");
+            FileUtils.fileWrite(new File(dir, "sub/deeper/same.txt"), "UTF-8", "same");
+        }
+        FileUtils.fileWrite(new File(dir1, "sub/changed.txt"), "UTF-8", "one");
+        FileUtils.fileWrite(new File(dir2, "sub/changed.txt"), "UTF-8", "two");
+        FileUtils.fileWrite(new File(dir1, "only1.txt"), "UTF-8", "one");
+        FileUtils.fileWrite(new File(dir2, "sub/deeper/only2.txt"), "UTF-8", "two");
+
+        assertThat(
+                FileUtils.contentDifferences(dir1, dir2),
+                is(Arrays.asList("only1.txt", "sub/changed.txt", "sub/deeper/only2.txt")));
+        assertThat(FileUtils.contentDifferences(dir1, dir1).isEmpty(), is(true));
+    }
+
     // copyURLToFile
 
     @Test
@@ -285,6 +333,81 @@ public class FileUtilsTest {
         // TODO Maybe test copy to itself like for copyFile()
     }
 
+    @Test
+    public void copyURLToFileFromFile() throws Exception {
+        File directory = tempFolder.newFolder(name.getMethodName());
+        File source = new File(directory, "source.bin");
+        byte[] data = new byte[200000];
+        new Random(7).nextBytes(data);
+        Files.write(source.toPath(), data);
+        File destination = new File(directory, "sub/destination.bin");
+        List<Long> progress = new ArrayList<>();
+
+        FileUtils.copyURLToFile(source.toURI().toURL(), destination, progress::add);
+
+        assertThat(Files.readAllBytes(destination.toPath()), is(data));
+        assertThat(progress.get(progress.size() - 1), is((long) data.length));
+        assertThat(directory.list().length, is(2));
+    }
+
+    @Test
+    public void copyURLToFileFromJar() throws Exception {
+        File directory = tempFolder.newFolder(name.getMethodName());
+        File jar = new File(directory, "archive.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("dir/some entry.txt"));
+            out.write("entry content".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        URL url = new URL("jar:" + jar.toURI().toURL() + "!/dir/some%20entry.txt");
+        File destination = new File(directory, "entry.txt");
+
+        FileUtils.copyURLToFile(url, destination);
+        FileUtils.copyURLToFile(url, destination);
+
+        assertThat(FileUtils.fileRead(destination, "UTF-8"), is("entry content"));
+        try {
+            FileUtils.copyURLToFile(new URL("jar:" + jar.toURI().toURL() + "!/missing.txt"), destination);
+            fail("missing entry");
+        } catch (FileNotFoundException e) {
+            assertThat(e.getMessage(), containsString("missing.txt"));
+        }
+        assertThat(FileUtils.fileRead(destination, "UTF-8"), is("entry content"));
+        assertThat(directory.list().length, is(2));
+    }
+
+    // getFilesFromExtension
+
+    @Test
+    public void getFilesFromExtension() throws Exception {
+        File directory = tempFolder.newFolder(name.getMethodName());
+        for (String path : new String[] {
+            "a.java", "a.txt", "noext", "sub/b.java", "sub/deep/c.JAVA", "sub/deep/d.java", "CVS/e.java", "x.y/f"
+        }) {
+            File file = new File(directory, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+
+        for (boolean parallel : new boolean[] {false, true}) {
+            String[] files = FileUtils.getFilesFromExtension(directory.getPath(), parallel, "java", "");
+
+            assertThat(
+                    new HashSet<>(Arrays.asList(files)),
+                    is(new HashSet<>(Arrays.asList(
+                            new File(directory, "a.java").getAbsolutePath(),
+                            new File(directory, "noext").getAbsolutePath(),
+                            new File(directory, "sub/b.java").getAbsolutePath(),
+                            new File(directory, "sub/deep/d.java").getAbsolutePath(),
+                            new File(directory, "x.y/f").getAbsolutePath()))));
+        }
+        assertThat(
+                Arrays.asList(FileUtils.getFilesFromExtension(directory.getPath(), true, "java", "")),
+                is(Arrays.asList(FileUtils.getFilesFromExtension(directory.getPath(), "java", ""))));
+        assertThat(FileUtils.getFilesFromExtension(new File(directory, "a.java").getPath(), "java").length, is(0));
+        assertThat(FileUtils.getFilesFromExtension(new File(directory, "missing").getPath(), "java").length, is(0));
+    }
+
     // forceMkdir
 
     @Test
@@ -493,6 +616,59 @@ public class FileUtilsTest {
         assertTrue("to.txt content should be unchanged and have been left alone", to.lastModified() < MODIFIED_TODAY);
     }
 
+    @Test
+    public void copyFileWithFilteringSurrogatesAcrossBuffers() throws Exception {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 100000) {
+            content.append('x').append("\ud83d\ude00");
+        }
+        File from = new File(tempFolder.getRoot(), "from.txt");
+        FileUtils.fileWrite(from, "UTF-8", content.toString());
+        File to = new File(tempFolder.getRoot(), "to.txt");
+        FileUtils.fileWrite(to, "UTF-8", content.substring(0, 50001) + "changed");
+
+        FileUtils.copyFile(from, to, "UTF-8", new FileUtils.FilterWrapper[] {identity()}, false);
+
+        assertThat(FileUtils.fileRead(to, "UTF-8"), is(content.toString()));
+    }
+
+    @Test
+    public void copyFileWithFilteringOverPrefixEndingOnBufferBoundary() throws Exception {
+        char[] content = new char[16384];
+        Arrays.fill(content, 'a');
+        File from = new File(tempFolder.getRoot(), "from.txt");
+        FileUtils.fileWrite(from, "UTF-8", new String(content));
+        File to = new File(tempFolder.getRoot(), "to.txt");
+        FileUtils.fileWrite(to, "UTF-8", new String(content, 0, 8192));
+
+        FileUtils.copyFile(from, to, "UTF-8", new FileUtils.FilterWrapper[] {identity()}, false);
+
+        assertThat(FileUtils.fileRead(to, "UTF-8"), is(new String(content)));
+    }
+
+    @Test
+    public void copyFileWithFilteringWritesFlushedEncoderOutput() throws Exception {
+        // ISO-2022-JP switches back to ASCII with an escape sequence when the encoder is flushed
+        String content = "Hello \u65e5\u672c";
+        File from = new File(tempFolder.getRoot(), "from.txt");
+        FileUtils.fileWrite(from, "ISO-2022-JP", content);
+        File to = new File(tempFolder.getRoot(), "to.txt");
+        FileUtils.fileWrite(to, "ISO-2022-JP", "Hello");
+
+        FileUtils.copyFile(from, to, "ISO-2022-JP", new FileUtils.FilterWrapper[] {identity()}, false);
+
+        assertThat(Files.readAllBytes(to.toPath()), is(content.getBytes("ISO-2022-JP")));
+    }
+
+    private static FileUtils.FilterWrapper identity() {
+        return new FileUtils.FilterWrapper() {
+            @Override
+            public Reader getReader(Reader reader) {
+                return reader;
+            }
+        };
+    }
+
     private static FileUtils.FilterWrapper[] wrappers() {
         return new FileUtils.FilterWrapper[] {
             new FileUtils.FilterWrapper() {
@@ -825,6 +1001,138 @@ public class FileUtilsTest {
         assertThat(data, is("Hello /u1234"));
     }
 
+    @Test
+    public void fileReadLargeFile() throws Exception {
+        File file = new File(tempFolder.getRoot(), "large.txt");
+        StringBuilder expected = new StringBuilder();
+        while (expected.length() < 3 * 1024 * 1024) {
+            expected.append("Hello \u00e9\u4e2d\ud83d\ude00 ").append(expected.length()).append('\n');
+        }
+        Files.write(file.toPath(), expected.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertThat(FileUtils.fileRead(file, "UTF-8"), is(expected.toString()));
+    }
+
+    @Test
+    public void fileReadAsCharSequence() throws Exception {
+        File file = new File(tempFolder.getRoot(), "read.txt");
+        Files.write(file.toPath(), "Hello \u00e9".getBytes(StandardCharsets.UTF_8));
+
+        CharSequence data = FileUtils.fileReadAsCharSequence(file, "UTF-8");
+        assertThat(data.length(), is(7));
+        assertThat(data.toString(), is("Hello \u00e9"));
+    }
+
+    @Test
+    public void fileReadAsCharSequenceOfUnknownSize() throws Exception {
+        File file = new File("/proc/self/status");
+        assumeTrue(file.exists());
+
+        CharSequence data = FileUtils.fileReadAsCharSequence(file, "UTF-8");
+        assertThat(data.toString(), containsString("Name:"));
+    }
+
+    @Test(expected = MalformedInputException.class)
+    public void fileReadLargeFileMalformed() throws Exception {
+        File file = new File(tempFolder.getRoot(), "malformed.txt");
+        byte[] data = new byte[2 * 1024 * 1024];
+        Arrays.fill(data, (byte) 'a');
+        data[data.length / 2] = (byte) 0xff;
+        Files.write(file.toPath(), data);
+
+        FileUtils.fileRead(file, "UTF-8");
+    }
+
+    @Test
+    public void fileWriteAtomic() throws Exception {
+        File dir = tempFolder.newFolder(name.getMethodName());
+        File file = new File(dir, "atomic.txt");
+
+        FileUtils.fileWriteAtomic(file, "UTF-8", "Hello \u00e9", false);
+        assertThat(FileUtils.fileRead(file, "UTF-8"), is("Hello \u00e9"));
+
+        FileUtils.fileWriteAtomic(file, "UTF-8", "replaced", true);
+        assertThat(FileUtils.fileRead(file, "UTF-8"), is("replaced"));
+        assertThat(dir.list(), is(new String[] {"atomic.txt"}));
+    }
+
+    @Test
+    public void fileWriteAtomicKeepsPermissions() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        File file = new File(tempFolder.getRoot(), "script.sh");
+        FileUtils.fileWrite(file, "UTF-8", "echo old");
+        file.setExecutable(true);
+
+        FileUtils.fileWriteAtomic(file, "UTF-8", "echo new", false);
+
+        assertThat(file.canExecute(), is(true));
+        assertThat(FileUtils.fileRead(file, "UTF-8"), is("echo new"));
+    }
+
+    @Test
+    public void fileWriteAtomicFailureKeepsOriginal() throws Exception {
+        File file = new File(tempFolder.getRoot(), "atomic.txt");
+        FileUtils.fileWrite(file, "UTF-8", "original");
+
+        try {
+            FileUtils.fileWriteAtomic(file, "no-such-encoding", "replaced", true);
+            fail("exception expected");
+        } catch (IllegalArgumentException e) {
+            assertThat(FileUtils.fileRead(file, "UTF-8"), is("original"));
+        }
+    }
+
+    @Test
+    public void fileWriteAtomicUnmappableKeepsOriginal() throws Exception {
+        File file = new File(tempFolder.getRoot(), "atomic.txt");
+        FileUtils.fileWrite(file, "UTF-8", "original");
+
+        try {
+            FileUtils.fileWriteAtomic(file, "US-ASCII", "replaced \u00e9", true);
+            fail("exception expected");
+        } catch (UnmappableCharacterException e) {
+            assertThat(FileUtils.fileRead(file, "UTF-8"), is("original"));
+        }
+    }
+
+    @Test
+    public void fileWriteAtomicBatchFailureReplacesNothing() throws Exception {
+        File dir = tempFolder.newFolder("batch");
+        File first = new File(dir, "first.txt");
+        File second = new File(dir, "second.txt");
+        FileUtils.fileWrite(first, "UTF-8", "original");
+        Map<File, String> files = new LinkedHashMap<>();
+        files.put(first, "replaced");
+        files.put(second, "unmappable \u00e9");
+
+        try {
+            FileUtils.fileWriteAtomic(files, "US-ASCII", true);
+            fail("exception expected");
+        } catch (UnmappableCharacterException e) {
+            assertThat(FileUtils.fileRead(first, "UTF-8"), is("original"));
+            assertFalse(second.exists());
+            assertThat(dir.list(), is(new String[] {"first.txt"}));
+        }
+    }
+
+    @Test
+    public void fileWriteAtomicBatch() throws Exception {
+        File dir1 = tempFolder.newFolder("dir1");
+        File dir2 = tempFolder.newFolder("dir2");
+        Map<File, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            files.put(new File(i % 2 == 0 ? dir1 : dir2, "file" + i + ".txt"), "content " + i);
+        }
+
+        FileUtils.fileWriteAtomic(files, "UTF-8", true);
+
+        for (Map.Entry<File, String> entry : files.entrySet()) {
+            assertThat(FileUtils.fileRead(entry.getKey(), "UTF-8"), is(entry.getValue()));
+        }
+        assertThat(dir1.list().length, is(5));
+        assertThat(dir2.list().length, is(5));
+    }
+
     @Test
     @Ignore("Commons test case that is failing for plexus")
     public void readLines() throws Exception {
@@ -975,6 +1283,127 @@ public class FileUtilsTest {
         FileUtils.deleteDirectory(testFile);
     }
 
+    @Test
+    public void deleteDirectoryWithManyFiles() throws IOException {
+        File testDirectory = new File(tempFolder.getRoot(), name.getMethodName());
+        for (int i = 0; i < 5; i++) {
+            File subDirectory = new File(testDirectory, "dir" + i + "/nested");
+            subDirectory.mkdirs();
+            for (int j = 0; j < 150; j++) {
+                createFile(new File(subDirectory, "file" + j + ".class"), j);
+            }
+        }
+
+        FileUtils.deleteDirectory(testDirectory);
+        assertThat("Check No Exist", testDirectory.exists(), is(false));
+    }
+
+    @Test
+    public void cleanDirectoryDoesNotFollowSymlinks() throws IOException {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+
+        File outside = tempFolder.newFolder("outside");
+        File outsideFile = new File(outside, "keep.txt");
+        createFile(outsideFile, 1);
+
+        File testDirectory = tempFolder.newFolder(name.getMethodName());
+        File content = new File(testDirectory, "content.txt");
+        createFile(content, 1);
+        File link = new File(testDirectory, "link");
+        FileUtils.createSymbolicLink(link, outside);
+
+        FileUtils.cleanDirectory(testDirectory);
+
+        assertThat(testDirectory.exists(), is(true));
+        assertThat(testDirectory.list().length, is(0));
+        assertThat(outsideFile.exists(), is(true));
+    }
+
+    @Test
+    public void cleanDirectoryReportsAllFailures() throws IOException {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+
+        File testDirectory = tempFolder.newFolder(name.getMethodName());
+        File locked1 = new File(testDirectory, "locked1");
+        File locked2 = new File(testDirectory, "locked2");
+        locked1.mkdir();
+        locked2.mkdir();
+        createFile(new File(locked1, "file.txt"), 1);
+        createFile(new File(locked2, "file.txt"), 1);
+        createFile(new File(testDirectory, "deletable.txt"), 1);
+        locked1.setWritable(false);
+        locked2.setWritable(false);
+        try {
+            assumeFalse("running with privileges ignoring permissions", Files.isWritable(locked1.toPath()));
+
+            FileUtils.cleanDirectory(testDirectory);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertThat(e.getSuppressed().length, is(2));
+            assertThat(new File(testDirectory, "deletable.txt").exists(), is(false));
+        } finally {
+            locked1.setWritable(true);
+            locked2.setWritable(true);
+        }
+    }
+
+    @Test
+    public void deleteDirectoryInBackground() throws Exception {
+        File testDirectory = tempFolder.newFolder(name.getMethodName());
+        File target = new File(testDirectory, "target");
+        for (int i = 0; i < 3; i++) {
+            File dir = new File(target, "dir" + i);
+            dir.mkdirs();
+            createFile(new File(dir, "file.txt"), 10);
+        }
+        File stale = new File(testDirectory, ".target.deleted-stale");
+        stale.mkdir();
+        createFile(new File(stale, "file.txt"), 10);
+
+        FileUtils.deleteDirectoryInBackground(target).get(30, TimeUnit.SECONDS);
+
+        assertFalse(target.exists());
+        assertThat(testDirectory.list().length, is(0));
+    }
+
+    @Test
+    public void deleteDirectoryInBackgroundFreesPathImmediately() throws Exception {
+        File testDirectory = tempFolder.newFolder(name.getMethodName());
+        File target = new File(testDirectory, "target");
+        target.mkdir();
+        createFile(new File(target, "file.txt"), 10);
+
+        FileUtils.deleteDirectoryInBackground(target);
+
+        assertFalse(target.exists());
+        assertTrue(target.mkdir());
+        assertTrue(FileUtils.awaitBackgroundDeletions(30, TimeUnit.SECONDS));
+        assertThat(testDirectory.list(), is(new String[] {"target"}));
+    }
+
+    @Test
+    public void deleteDirectoryInBackgroundNonExistent() throws Exception {
+        File testDirectory = tempFolder.newFolder(name.getMethodName());
+
+        assertTrue(FileUtils.deleteDirectoryInBackground(new File(testDirectory, "missing")).isDone());
+    }
+
+    @Test
+    public void deleteDirectoryInBackgroundDeletesOnlyTheLink() throws Exception {
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        File testDirectory = tempFolder.newFolder(name.getMethodName());
+        File real = new File(testDirectory, "real");
+        real.mkdir();
+        createFile(new File(real, "file.txt"), 10);
+        File link = new File(testDirectory, "link");
+        Files.createSymbolicLink(link.toPath(), real.toPath());
+
+        assertTrue(FileUtils.deleteDirectoryInBackground(link).isDone());
+
+        assertFalse(Files.exists(link.toPath(), LinkOption.NOFOLLOW_LINKS));
+        assertTrue(new File(real, "file.txt").exists());
+    }
+
     ////  getDefaultExcludes
 
     @Test
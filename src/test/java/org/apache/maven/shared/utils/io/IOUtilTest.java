@@ -24,26 +24,40 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
 
 @SuppressWarnings("deprecation")
 public class IOUtilTest {
 
     private static final long INFINITE_LOOP_TIMEOUT = 500;
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void closeReaderWithNull() throws Exception {
         IOUtil.close((Reader) null);
@@ -272,6 +286,208 @@ public class IOUtilTest {
                 is(false));
     }
 
+    @Test
+    public void contentEqualDifferentReadSizes() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        InputStream trickle = new DontCloseByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        assertThat(IOUtil.contentEquals(trickle, new DontCloseByteArrayInputStream(data)), is(true));
+
+        byte[] changed = data.clone();
+        changed[changed.length - 1]++;
+        assertThat(
+                IOUtil.contentEquals(
+                        new DontCloseByteArrayInputStream(data), new DontCloseByteArrayInputStream(changed)),
+                is(false));
+        assertThat(
+                IOUtil.contentEquals(
+                        new DontCloseByteArrayInputStream(data),
+                        new DontCloseByteArrayInputStream(Arrays.copyOf(data, 8192))),
+                is(false));
+    }
+
+    @Test
+    public void copyReusesPooledBuffers() throws Exception {
+        byte[] data = new byte[10000];
+        new Random(42).nextBytes(data);
+        IOUtil.copy(new ByteArrayInputStream(data), new ByteArrayOutputStream());
+        BufferPool.resetStatistics();
+
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IOUtil.copy(new ByteArrayInputStream(data), out);
+            assertThat(out.toByteArray(), is(data));
+        }
+        assertThat(BufferPool.getHitCount(), is(3L));
+        assertThat(BufferPool.getMissCount(), is(0L));
+    }
+
+    @Test
+    public void copyWithLargerPooledBuffer() throws Exception {
+        IOUtil.copy(new ByteArrayInputStream(new byte[100]), new ByteArrayOutputStream(), 16 * 1024);
+
+        // a pooled buffer larger than the requested size must not change how much is read at once
+        final StringBuilder reads = new StringBuilder();
+        InputStream input = new ByteArrayInputStream(new byte[10]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                reads.append(len).append(' ');
+                return super.read(b, off, len);
+            }
+        };
+        IOUtil.copy(input, new ByteArrayOutputStream(), 5);
+        assertThat(reads.toString(), is("5 5 5 "));
+    }
+
+    @Test
+    public void copyFileStreams() throws Exception {
+        byte[] data = new byte[5 * 1024 * 1024 + 3];
+        new Random(42).nextBytes(data);
+        File from = tempFolder.newFile("from.bin");
+        Files.write(from.toPath(), data);
+        File to = tempFolder.newFile("to.bin");
+
+        try (FileInputStream in = new FileInputStream(from);
+                FileOutputStream out = new FileOutputStream(to)) {
+            IOUtil.copy(in, out);
+            assertThat(in.read(), is(-1));
+        }
+        assertThat(Files.readAllBytes(to.toPath()), is(data));
+    }
+
+    @Test
+    public void copyFileStreamsFromPositionAndAppending() throws Exception {
+        File from = tempFolder.newFile("from.txt");
+        Files.write(from.toPath(), "0123456789".getBytes(StandardCharsets.US_ASCII));
+        File to = tempFolder.newFile("to.txt");
+        Files.write(to.toPath(), "head-".getBytes(StandardCharsets.US_ASCII));
+
+        try (FileInputStream in = new FileInputStream(from);
+                FileOutputStream out = new FileOutputStream(to, true)) {
+            assertThat(in.skip(4), is(4L));
+            IOUtil.copy(in, out);
+        }
+        assertThat(new String(Files.readAllBytes(to.toPath()), StandardCharsets.US_ASCII), is("head-456789"));
+    }
+
+    @Test
+    public void copyFileStreamFromPipe() throws Exception {
+        File fifo = new File(tempFolder.getRoot(), "fifo");
+        Process mkfifo;
+        try {
+            mkfifo = new ProcessBuilder("mkfifo", fifo.getPath()).start();
+        } catch (IOException e) {
+            mkfifo = null;
+        }
+        assumeTrue(mkfifo != null && mkfifo.waitFor() == 0);
+        File to = tempFolder.newFile("to.txt");
+
+        Thread writer = new Thread(() -> {
+            try (FileOutputStream out = new FileOutputStream(fifo)) {
+                out.write("hello\n".getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.start();
+        try (FileInputStream in = new FileInputStream(fifo);
+                FileOutputStream out = new FileOutputStream(to)) {
+            IOUtil.copy(in, out);
+        }
+        writer.join();
+        assertThat(new String(Files.readAllBytes(to.toPath()), StandardCharsets.US_ASCII), is("hello\n"));
+    }
+
+    @Test
+    public void copyFileStreamSubclassUsesOverriddenRead() throws Exception {
+        File from = tempFolder.newFile("from.txt");
+        Files.write(from.toPath(), "abc".getBytes(StandardCharsets.US_ASCII));
+        File to = tempFolder.newFile("to.txt");
+
+        try (FileInputStream in = new FileInputStream(from) {
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        for (int i = off; i < off + n; i++) {
+                            b[i] = (byte) Character.toUpperCase(b[i]);
+                        }
+                        return n;
+                    }
+                };
+                FileOutputStream out = new FileOutputStream(to)) {
+            IOUtil.copy(in, out);
+        }
+        assertThat(new String(Files.readAllBytes(to.toPath()), StandardCharsets.US_ASCII), is("ABC"));
+    }
+
+    @Test
+    public void toByteArrayFromFileInputStream() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        File file = tempFolder.newFile("data.bin");
+        Files.write(file.toPath(), data);
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            assertThat(in.skip(10), is(10L));
+            assertThat(IOUtil.toByteArray(in), is(Arrays.copyOfRange(data, 10, data.length)));
+        }
+    }
+
+    @Test
+    public void toByteArrayWithWrongLengthHint() throws Exception {
+        byte[] data = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        ByteArrayInputStream underreporting = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int available() {
+                return Math.min(3, super.available());
+            }
+        };
+        assertThat(IOUtil.toByteArray(underreporting), is(data));
+
+        ByteArrayInputStream overreporting = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int available() {
+                return super.available() + 5;
+            }
+        };
+        assertThat(IOUtil.toByteArray(overreporting), is(data));
+    }
+
+    @Test
+    public void toStringFromFileInputStream() throws Exception {
+        String probe = "A string \u2345\u00ef";
+        File file = tempFolder.newFile("data.txt");
+        Files.write(file.toPath(), probe.getBytes(StandardCharsets.UTF_8));
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            assertThat(IOUtil.toString(in, "UTF-8"), is(probe));
+        }
+    }
+
+    @Test
+    public void toStringLargeInputStream() throws Exception {
+        StringBuilder probe = new StringBuilder();
+        while (probe.length() < 10 * 1024 * 1024) {
+            probe.append("A string \u2345\u00ef\ud83d\ude00 ").append(probe.length()).append('\n');
+        }
+        byte[] bytes = probe.toString().getBytes(StandardCharsets.UTF_8);
+
+        assertThat(IOUtil.toString(new ByteArrayInputStream(bytes), "UTF-8", 7), is(probe.toString()));
+    }
+
+    @Test
+    public void toStringReplacesMalformedInput() throws Exception {
+        byte[] bytes = {'a', (byte) 0xff, 'b'};
+
+        assertThat(IOUtil.toString(bytes, "UTF-8"), is("a\ufffdb"));
+        assertThat(IOUtil.toString(new ByteArrayInputStream(bytes), "UTF-8"), is("a\ufffdb"));
+    }
+
     @Test(expected = NullPointerException.class)
     public void toStringNullByteArray() throws Exception {
         IOUtil.toString(nullByteArray());